@@ -1,21 +1,19 @@
 package com.example.project2;
 
-import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
-import android.provider.MediaStore;
 import android.util.Base64;
 import android.util.Log;
+import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.ImageView;
+import android.widget.ProgressBar;
 import android.widget.RadioButton;
 import android.widget.Toast;
 
@@ -27,24 +25,30 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.core.content.FileProvider;
 
+import com.example.project2.image.EditSession;
+import com.example.project2.image.HoldOverlay;
+import com.example.project2.image.PhotoDecoder;
+import com.example.project2.model.Hold;
 import com.example.project2.model.Route;
+import com.example.project2.upload.RouteUploadQueue;
+import com.example.project2.util.AppExecutors;
+import com.example.project2.util.CacheDirectoryManager;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
-import com.google.android.gms.tasks.Task;
-import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.StorageReference;
-import com.google.firebase.storage.UploadTask;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.concurrent.ExecutionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Activity for allowing users to create a new route
@@ -54,11 +58,19 @@ public class CreateRouteActivity extends AppCompatActivity {
     private static final String TAG = "CreateRouteActivity";
     private static final int REQUEST_CAMERA_PERMISSION = 100;
 
+    /**
+     * Keys the photo and holds are saved under when the activity is recreated
+     */
+    private static final String KEY_ROUTE_IMAGE_URI = "key_route_image_uri";
+    private static final String KEY_EDITED_PHOTO_URI = "key_edited_photo_uri";
+    private static final String KEY_ROUTE_HOLDS = "key_route_holds";
+
     /**
      * Variables for elements in the activity_create_route.xml layout.
      */
     private Uri routeImageUri;
-    private Bitmap routeImageBitmap;
+    private Uri editedPhotoUri;
+    private ArrayList<Hold> routeHolds = new ArrayList<>();
     private ActivityResultLauncher<Uri> takePhotoLauncher;
 
     private EditText titleInput, locationInput, slopeInput, difficultyInput, descriptionInput;
@@ -66,12 +78,15 @@ public class CreateRouteActivity extends AppCompatActivity {
     private ImageButton backButton;
     private ImageView imagePreview;
     private RadioButton publicRadioButton, privateRadioButton;
-    private byte[] photoBytes;
+    private ProgressBar uploadProgressBar;
 
     /**
-     * Firebase Firestore instance
+     * Variables for the background processing stage. Decoding the preview and journaling the route happen off the
+     * main thread, and results are handed back to it through mainThread.
      */
-    private FirebaseFirestore firestore;
+    private final Executor backgroundExecutor = AppExecutors.getBackgroundExecutor();
+    private final Executor mainThread = AppExecutors.getMainThreadExecutor();
+    private RouteUploadQueue uploadQueue;
 
     /**
      * Initializes the activity and sets up the button click listeners.
@@ -94,8 +109,7 @@ public class CreateRouteActivity extends AppCompatActivity {
             requestPermissions(new String[]{android.Manifest.permission.READ_EXTERNAL_STORAGE}, 1);
         }
 
-        // Initialize Firestore
-        firestore = FirebaseFirestore.getInstance();
+        uploadQueue = RouteUploadQueue.getInstance(this);
 
         // Find UI components
         takePhotoButton = findViewById(R.id.take_photo_btn);
@@ -109,22 +123,20 @@ public class CreateRouteActivity extends AppCompatActivity {
         backButton = findViewById(R.id.back_button);
         publicRadioButton = findViewById(R.id.radio_public);
         privateRadioButton = findViewById(R.id.radio_private);
+        uploadProgressBar = findViewById(R.id.upload_progress);
 
         ActivityResultLauncher<Intent> editImageLauncher = registerForActivityResult(
                 new ActivityResultContracts.StartActivityForResult(),
                 result -> {
                     Log.d(TAG, "In ImageEditActivity Return");
-                    if (result.getResultCode() == RESULT_OK && result.getData() != null) {
-                        Uri editedImageUri = (Uri) result.getData().getExtras().get("editedImage");
-                        Log.d(TAG, "Edited Photo Uri: " + editedImageUri);
-                        routeImageBitmap = copyBitmap(uriToBitmap(editedImageUri));
-                        Log.d(TAG, "Edited Photo Bitmap: " + routeImageBitmap);
-
-                        if (routeImageBitmap != null) {
-                            imagePreview.setImageBitmap(routeImageBitmap);
-                            Log.d(TAG, "Photo captured, edited, and loaded successfully.");
+                    if (result.getResultCode() == RESULT_OK) {
+                        // The edit is handed over in memory, unless the process was restarted in between.
+                        // From here on the edit is kept in this activity's saved state.
+                        EditSession session = EditSession.take();
+                        if (session != null) {
+                            loadEditedPhoto(session);
                         } else {
-                            Log.e(TAG, "Edited photo URI is null.");
+                            restoreEditSession();
                         }
                     }
                 }
@@ -153,6 +165,17 @@ public class CreateRouteActivity extends AppCompatActivity {
                 }
         );
 
+        // Restore the photo and holds if the activity is recreated, for example after the process was killed
+        if (savedInstanceState != null) {
+            routeImageUri = savedInstanceState.getParcelable(KEY_ROUTE_IMAGE_URI);
+            Uri photoUri = savedInstanceState.getParcelable(KEY_EDITED_PHOTO_URI);
+            @SuppressWarnings("unchecked")
+            ArrayList<Hold> holds = (ArrayList<Hold>) savedInstanceState.getSerializable(KEY_ROUTE_HOLDS);
+            if (photoUri != null) {
+                loadEditedPhoto(new EditSession(photoUri, null, holds != null ? holds : new ArrayList<>()));
+            }
+        }
+
         // Set up back button
         backButton.setOnClickListener(v -> finish()); // goes back to dashboard view
 
@@ -161,7 +184,8 @@ public class CreateRouteActivity extends AppCompatActivity {
             try {
                 takePhoto();
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                Log.e(TAG, "Error creating image file", e);
+                Toast.makeText(this, "Failed to create image file.", Toast.LENGTH_SHORT).show();
             }
         });
 
@@ -170,12 +194,88 @@ public class CreateRouteActivity extends AppCompatActivity {
     }
 
     /**
-     * Creates a mutable copy of a given bitmap
-     * @param original bitmap to be copied
-     * @return mutable copy of original
+     * Saves the photo and holds of this form, so they are restored with it and never leak into another form.
+     * @param outState The bundle to save to
+     */
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(KEY_ROUTE_IMAGE_URI, routeImageUri);
+        outState.putParcelable(KEY_EDITED_PHOTO_URI, editedPhotoUri);
+        outState.putSerializable(KEY_ROUTE_HOLDS, routeHolds);
+    }
+
+    /**
+     * Forgets any edit handed over to this form when the form is closed without submitting.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (isFinishing()) {
+            EditSession.clear(this);
+        }
+    }
+
+    /**
+     * Shows the edited photo in the preview, with its holds drawn over it. The screen-sized copy decoded by the editor
+     * is reused when it was handed over in memory, otherwise a preview-sized copy is decoded in the background. The
+     * full size photo is only decoded when the route is submitted.
+     * @param session The edit returned by ImageEditActivity
+     */
+    private void loadEditedPhoto(EditSession session) {
+        showProgress(true);
+        submitButton.setEnabled(false);
+        HoldOverlay overlay = new HoldOverlay(this);
+        int previewWidth = getResources().getDisplayMetrics().widthPixels;
+        backgroundExecutor.execute(() -> {
+            Bitmap photo = session.getPreview();
+            if (photo == null) {
+                photo = PhotoDecoder.decodeToFit(this, session.getPhotoUri(), previewWidth, previewWidth);
+            }
+            Bitmap preview = photo != null ? overlay.render(photo, session.getHolds()) : null;
+            mainThread.execute(() -> {
+                if (isDestroyed()) {
+                    return;
+                }
+                showProgress(false);
+                submitButton.setEnabled(true);
+                Log.d(TAG, "Edited Photo Preview: " + preview);
+
+                if (preview != null) {
+                    editedPhotoUri = session.getPhotoUri();
+                    routeHolds = session.getHolds();
+                    imagePreview.setImageBitmap(preview);
+                    Log.d(TAG, "Photo captured, edited, and loaded successfully.");
+                } else {
+                    Log.e(TAG, "Edited photo URI is null.");
+                }
+            });
+        });
+    }
+
+    /**
+     * Reads the edit just returned by ImageEditActivity back from app storage and shows it, when the process was
+     * restarted before it could be handed over in memory. Runs in order with the editor's write of the edit.
      */
-    private Bitmap copyBitmap(Bitmap original) {
-        return original.copy(original.getConfig(), true); // Create a mutable copy
+    private void restoreEditSession() {
+        AppExecutors.getDiskIoExecutor().execute(() -> {
+            EditSession session = EditSession.restore(this);
+            if (session != null) {
+                mainThread.execute(() -> {
+                    if (!isDestroyed()) {
+                        loadEditedPhoto(session);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Shows or hides the progress bar while the photo is being processed.
+     * @param show true to show the progress bar
+     */
+    private void showProgress(boolean show) {
+        uploadProgressBar.setVisibility(show ? View.VISIBLE : View.GONE);
     }
 
     /**
@@ -193,57 +293,19 @@ public class CreateRouteActivity extends AppCompatActivity {
     }
 
     /**
-     * Uses MediaStore library to launch photo taking activity
-     * @throws IOException
+     * Launches the camera to take a photo. The photo is written to the app's cache directory rather than the
+     * MediaStore, so captures do not pile up in the user's gallery and CacheDirectoryManager deletes them once they
+     * are no longer used.
+     * @throws IOException If the file for the photo could not be created
      */
     private void takePhoto() throws IOException {
-        // Create a content URI for the image and assign it to the routeImage variable
-        ContentValues values = new ContentValues();
-        values.put(MediaStore.Images.Media.TITLE, "New Route Photo");
-        values.put(MediaStore.Images.Media.DESCRIPTION, "Photo taken for the route");
-        ContentResolver resolver = getContentResolver();
-
-        routeImageUri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
-
+        File photoFile = CacheDirectoryManager.getInstance(this)
+                .newFile(CacheDirectoryManager.CAMERA_DIR, "route_", ".jpg");
+        routeImageUri = FileProvider.getUriForFile(this, getPackageName() + ".fileprovider", photoFile);
 
         // Pass the URI to the camera via the intent
-        if (routeImageUri != null) {
-            Log.d("routeImageURI", "PICTURE URI WAS SUCCESS");
-            Log.d("routeImageURI", "URI: " + routeImageUri.toString());
-            Log.d("routeImageURI", "Scheme: " + routeImageUri.getScheme());
-            Log.d("routeImageURI", "Authority: " + routeImageUri.getAuthority());
-            Log.d("routeImageURI", "Path: " + routeImageUri.getPath());
-            takePhotoLauncher.launch(routeImageUri);
-        } else {
-            Log.e("BitmapDetails", "PICTURE BITMAP WAS NULL");
-            Toast.makeText(this, "Failed to create image file.", Toast.LENGTH_SHORT).show();
-        }
-    }
-
-    /**
-     * Converts a Uri to a Bitmap.
-     *
-     * @param uri The URI of the image.
-     * @return The image as a Bitmap, or null if conversion fails.
-     * @throws IOException If an error occurs while reading the image.
-     * @throws IllegalArgumentException If the URI is {@code null}.
-     */
-    private Bitmap uriToBitmap(Uri uri) {
-        Bitmap bitmap = null;
-        try {
-            // Open an InputStream from the Uri
-            InputStream inputStream = getContentResolver().openInputStream(uri);
-            if (inputStream != null) {
-                // Decode the InputStream to a Bitmap
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-                bitmap = BitmapFactory.decodeStream(inputStream, null, options);
-                inputStream.close(); // Always close the stream to avoid memory leaks
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return bitmap;
+        Log.d("routeImageURI", "URI: " + routeImageUri.toString());
+        takePhotoLauncher.launch(routeImageUri);
     }
 
     /**
@@ -303,54 +365,75 @@ public class CreateRouteActivity extends AppCompatActivity {
         route.setDifficulty(difficulty);
         route.setDescription(description);
         route.setAvgRating(0.0);
+        route.setHolds(routeHolds);
+
+        if (editedPhotoUri == null) {
+            Toast.makeText(this, "Please take a photo of your route", Toast.LENGTH_SHORT).show();
+            return;
+        }
 
         // Check the selected access type via the radio button checked by the user
+        List<String> collections = new ArrayList<>();
         if (publicRadioButton.isChecked()) {
             // Save to both "user_routes" and "community_routes"
-            saveRouteToFirestore("user_routes", route);
-            saveRouteToFirestore("community_routes", route);
+            collections.add("user_routes");
+            collections.add("community_routes");
         } else if (privateRadioButton.isChecked()) {
             // Save only to "user_routes"
-            saveRouteToFirestore("user_routes", route);
+            collections.add("user_routes");
         } else {
             Toast.makeText(this, "Please select Public or Private access", Toast.LENGTH_SHORT).show();
             return;
         }
+        saveRouteToFirestore(collections, route);
 
-        // Finish the activity to go back to the dashboard view
-        finish();
+        // Keep the form from being submitted twice while the route is journaled
+        submitButton.setEnabled(false);
+        takePhotoButton.setEnabled(false);
+        showProgress(true);
     }
 
     /**
-     * Saves a route to the correct collection in the Firestore database. Stores the related image to Firebase Cloud Storage using the route name.
-     * @param collection The collection to save the route to.
+     * Saves a route to the correct collections in the Firestore database. The route is journaled with the Uri of its
+     * edited photo in the {@link RouteUploadQueue} and accepted straight away. Decoding the photo at full size,
+     * compressing its renditions and uploading them all happen later in the upload worker, so creating a route is
+     * instant and works without a connection.
+     * @param collections The collections to save the route to.
      * @param route The route to save.
      */
-    private void saveRouteToFirestore(String collection, Route route) {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        routeImageBitmap.compress(Bitmap.CompressFormat.JPEG, 50, byteArrayOutputStream);
-        byte[] byteArray = byteArrayOutputStream.toByteArray();
-        photoBytes = (byteArray);
-        FirebaseStorage storage = FirebaseStorage.getInstance();
-        // Create a storage reference from our app
-        StorageReference storageRef = storage.getReferenceFromUrl("gs://project-2-1d31a.firebasestorage.app");
-        StorageReference riversRef = storageRef.child("RoutePhotos/" + route.getTitle() + ".jpeg");
-        UploadTask uploadTask = riversRef.putBytes(photoBytes);
-
-        route.setPhoto("");
-        firestore.collection(collection)
-                .add(route)
-                .addOnSuccessListener(documentReference -> {
-                    Log.d(TAG, "Route added to " + collection + " with ID: " + documentReference.getId());
-                    if (collection.equals("user_routes")) {
-                        Toast.makeText(getApplicationContext(), "Route added to your routes!", Toast.LENGTH_SHORT).show();
-                    } else if (collection.equals("community_routes")) {
-                        Toast.makeText(getApplicationContext(), "Route added to the community!", Toast.LENGTH_SHORT).show();
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error adding route to " + collection, e);
-                    Toast.makeText(getApplicationContext(), "Failed to add route to " + collection, Toast.LENGTH_SHORT).show();
-                });
+    private void saveRouteToFirestore(List<String> collections, Route route) {
+        String photoUri = editedPhotoUri.toString();
+        backgroundExecutor.execute(() -> {
+            try {
+                uploadQueue.enqueue(route, collections, photoUri);
+            } catch (IOException e) {
+                Log.e(TAG, "Error saving route " + route.getTitle(), e);
+                mainThread.execute(this::onSaveFailed);
+                return;
+            }
+
+            mainThread.execute(this::onRouteQueued);
+        });
+    }
+
+    /**
+     * Called on the main thread once the route is journaled. Goes back to the dashboard view while the route is
+     * uploaded in the background.
+     */
+    private void onRouteQueued() {
+        EditSession.clear(this);
+        Toast.makeText(getApplicationContext(), "Route saved, it will be uploaded in the background",
+                Toast.LENGTH_SHORT).show();
+        finish();
+    }
+
+    /**
+     * Called on the main thread when the route could not be saved on the device. Lets the user try again.
+     */
+    private void onSaveFailed() {
+        Toast.makeText(getApplicationContext(), "Failed to save the route", Toast.LENGTH_SHORT).show();
+        submitButton.setEnabled(true);
+        takePhotoButton.setEnabled(true);
+        showProgress(false);
     }
 }
@@ -1,22 +1,22 @@
 package com.example.project2;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.util.Log;
-import android.widget.ImageView;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
-import com.google.android.gms.tasks.OnSuccessListener;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
+import com.example.project2.image.RoutePhotoLoader;
+import com.example.project2.image.TiledImageView;
+import com.example.project2.model.Hold;
 
-import java.util.Arrays;
+import java.util.List;
 
 public class ImageFullscreenActivity extends AppCompatActivity {
-    private ImageView photo;
+    public static final String KEY_PHOTO_PATH = "key_photo_path";
+    public static final String KEY_PREVIEW_PATH = "key_preview_path";
+    public static final String KEY_HOLDS = "key_holds";
+
+    private TiledImageView photo;
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -25,22 +25,11 @@ public class ImageFullscreenActivity extends AppCompatActivity {
 
         photo = findViewById(R.id.photo);
 
-        FirebaseStorage storage = FirebaseStorage.getInstance();
-        // Create a storage reference from our app
-        StorageReference storageRef = storage.getReferenceFromUrl("gs://project-2-1d31a.firebasestorage.app");
-        StorageReference riversRef = storageRef.child("RoutePhotos/" + getIntent().getExtras().getString("Route Title") + ".jpeg");
-        // Load images
-        riversRef.getBytes(10000000).addOnSuccessListener(new OnSuccessListener<byte[]>() {
-            @Override
-            public void onSuccess(byte[] bytes) {
-                // Convert the Base64 photo string to a Bitmap
-                Bitmap photoBitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                Log.d("Cloud return", Arrays.toString(bytes));
-                Log.d("Cloud return", bytes.length + "");
-                // Set the converted Bitmap to the ImageView
-                photo.setImageBitmap(photoBitmap);
-            }
-        });
+        // Download the photo through the shared photo cache, decoding only the tiles on screen
+        @SuppressWarnings("unchecked")
+        List<Hold> holds = (List<Hold>) getIntent().getSerializableExtra(KEY_HOLDS);
+        RoutePhotoLoader.loadFullscreen(photo, getIntent().getStringExtra(KEY_PHOTO_PATH),
+                getIntent().getStringExtra(KEY_PREVIEW_PATH), holds);
 
     }
 }
@@ -40,7 +40,12 @@ public class MainActivity extends AppCompatActivity implements
         RouteAdapter.OnRouteSelectedListener {
 
     private static final String TAG = "MainActivity";
-    private static final int LIMIT = 50;
+
+    /**
+     * Number of routes read per page, and how close to the end of the grid the next page is loaded
+     */
+    private static final int PAGE_SIZE = 50;
+    private static final int PAGE_PREFETCH_DISTANCE = 15;
 
     /**
      * Variables for the recycler view
@@ -94,8 +99,7 @@ public class MainActivity extends AppCompatActivity implements
 
         // Set up Firestore query to fetch routes for community-made routes
         mQuery = mFirestore.collection("community_routes")
-                .orderBy("avgRating", Query.Direction.DESCENDING)
-                .limit(LIMIT);
+                .orderBy("avgRating", Query.Direction.DESCENDING);
 
         // Initialize RecyclerView
         mRoutesRecycler = findViewById(R.id.recycler_view);
@@ -158,8 +162,7 @@ public class MainActivity extends AppCompatActivity implements
      */
     private void switchToCommunityView() {
         mQuery = mFirestore.collection("community_routes")
-                .orderBy("avgRating", Query.Direction.DESCENDING)
-                .limit(LIMIT);
+                .orderBy("avgRating", Query.Direction.DESCENDING);
         mAdapter.setQuery(mQuery);
 
         // Hide the "Create Route" button
@@ -173,8 +176,7 @@ public class MainActivity extends AppCompatActivity implements
         FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
         if (currentUser != null) {
             mQuery = mFirestore.collection("user_routes")
-                    .orderBy("avgRating", Query.Direction.DESCENDING)
-                    .limit(LIMIT);
+                    .orderBy("avgRating", Query.Direction.DESCENDING);
             mAdapter.setQuery(mQuery);
 
             // Show the "Create Route" button
@@ -200,7 +202,7 @@ public class MainActivity extends AppCompatActivity implements
         }
 
         // Create a new adapter
-        mAdapter = new RouteAdapter(mQuery, this) {
+        mAdapter = new RouteAdapter(mQuery, PAGE_SIZE, this) {
             @Override
             protected void onDataChanged() {
                 // Show or hide RecyclerView based on query results
@@ -222,8 +224,20 @@ public class MainActivity extends AppCompatActivity implements
         };
 
         // Set up RecyclerView with a grid layout (3 columns for the grid)
-        mRoutesRecycler.setLayoutManager(new GridLayoutManager(this, 3));
+        GridLayoutManager layoutManager = new GridLayoutManager(this, 3);
+        mRoutesRecycler.setLayoutManager(layoutManager);
         mRoutesRecycler.setAdapter(mAdapter);
+
+        // Load the next page of routes as the user scrolls near the end of the grid
+        mRoutesRecycler.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition()
+                        >= mAdapter.getItemCount() - PAGE_PREFETCH_DISTANCE) {
+                    mAdapter.loadNextPage();
+                }
+            }
+        });
     }
 
     /**
@@ -395,7 +409,8 @@ public class MainActivity extends AppCompatActivity implements
     }
 
     /**
-     * Stops listening to Firestore updates.
+     * Stops listening to Firestore updates. The listeners stay warm for a grace period, so
+     * coming back from a route's details shows the routes without reading them again.
      */
     @Override
     protected void onStop() {
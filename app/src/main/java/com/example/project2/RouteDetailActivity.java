@@ -1,8 +1,6 @@
 package com.example.project2;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.MenuItem;
@@ -17,18 +15,15 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
-import com.bumptech.glide.Glide;
+import com.example.project2.image.RoutePhotoLoader;
 import com.example.project2.model.Route;
-import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 
 /**
  * Activity for displaying information about a route when clicked on in the dashboard view
@@ -52,6 +47,7 @@ public class RouteDetailActivity extends AppCompatActivity {
     private FirebaseFirestore firestore;
     private DocumentReference routeRef;
     private String routeCollection;
+    private Route route;
 
     /**
      * Initializes the activity.
@@ -94,8 +90,16 @@ public class RouteDetailActivity extends AppCompatActivity {
         });
 
         findViewById(R.id.image_one).setOnClickListener(v -> {
+            // Wait until the route has loaded so the full size photo's path is known
+            if (route == null) {
+                return;
+            }
             Intent intent = new Intent(RouteDetailActivity.this, ImageFullscreenActivity.class);
-            intent.putExtra("Route Title", routeTitle.getText());
+            intent.putExtra(ImageFullscreenActivity.KEY_PHOTO_PATH, RoutePhotoLoader.getFullPath(route));
+            intent.putExtra(ImageFullscreenActivity.KEY_PREVIEW_PATH, RoutePhotoLoader.getMediumPath(route));
+            if (route.getHolds() != null) {
+                intent.putExtra(ImageFullscreenActivity.KEY_HOLDS, new ArrayList<>(route.getHolds()));
+            }
             startActivity(intent);
         });
 
@@ -232,6 +236,8 @@ public class RouteDetailActivity extends AppCompatActivity {
      * @param route The route to display.
      */
     private void displayRouteDetails(Route route) {
+        this.route = route;
+
         // Set UI elements with route data
         routeTitle.setText(route.getTitle());
         location.setText(String.format("Location: %s", route.getCity()));
@@ -240,21 +246,7 @@ public class RouteDetailActivity extends AppCompatActivity {
         routeDescription.setText(route.getDescription());
         communityRatingBar.setRating((float) route.getAvgRating());
 
-        FirebaseStorage storage = FirebaseStorage.getInstance();
-        // Create a storage reference from our app
-        StorageReference storageRef = storage.getReferenceFromUrl("gs://project-2-1d31a.firebasestorage.app");
-        StorageReference riversRef = storageRef.child("RoutePhotos/" + route.getTitle() + ".jpeg");
-        // Load images
-        riversRef.getBytes(10000000).addOnSuccessListener(new OnSuccessListener<byte[]>() {
-            @Override
-            public void onSuccess(byte[] bytes) {
-                // Convert the Base64 photo string to a Bitmap
-                Bitmap photoBitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                Log.d("Cloud return", Arrays.toString(bytes));
-                Log.d("Cloud return", bytes.length + "");
-                // Set the converted Bitmap to the ImageView
-                imageOne.setImageBitmap(photoBitmap);
-            }
-        });
+        // Load the route's medium photo through the shared photo cache
+        RoutePhotoLoader.loadDetail(imageOne, route);
     }
 }
@@ -0,0 +1,35 @@
+package com.example.project2;
+
+import android.app.Application;
+
+import com.example.project2.upload.RouteUploadWorker;
+import com.example.project2.util.AppExecutors;
+import com.example.project2.util.CacheDirectoryManager;
+
+/**
+ * Application class, used for work that has to happen once when the app's process starts.
+ */
+public class RouteFinderApplication extends Application {
+
+    /**
+     * Trims the photos left in the cache directory, and schedules again any journaled route whose upload work was
+     * lost. Route uploads interrupted when the process was last killed are resumed by RouteUploadWorker, which
+     * WorkManager runs again once the device is online.
+     */
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        CacheDirectoryManager.getInstance(this).trimAsync();
+        AppExecutors.getBackgroundExecutor().execute(() -> RouteUploadWorker.enqueueOrphanedJobs(this));
+    }
+
+    /**
+     * Trims the photos in the cache directory when the system asks the app to release memory.
+     * @param level The trim level
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        CacheDirectoryManager.getInstance(this).onTrimMemory(level);
+    }
+}
@@ -254,7 +254,8 @@ public class RouteReviewsActivity extends AppCompatActivity implements RatingDia
     }
 
     /**
-     * Stop listening for rating changes.
+     * Stop listening for rating changes. The listener stays warm for a grace period, so
+     * returning to the reviews shows them without reading them again.
      */
     @Override
     protected void onStop() {
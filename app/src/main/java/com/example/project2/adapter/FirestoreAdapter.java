@@ -15,85 +15,168 @@
  */
  package com.example.project2.adapter;
 
-import android.util.Log;
-
+import androidx.annotation.WorkerThread;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.google.firebase.firestore.DocumentChange;
+import com.example.project2.adapter.LiveQuery.Entry;
+import com.example.project2.util.AppExecutors;
 import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.EventListener;
 import com.google.firebase.firestore.FirebaseFirestoreException;
-import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QuerySnapshot;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
 
 /**
  * RecyclerView adapter for displaying the results of a Firestore {@link Query}.
  *
- * Note that this class forgoes some efficiency to gain simplicity. For example, the result of
- * {@link DocumentSnapshot#toObject(Class)} is not cached so the same object may be deserialized
- * many times as the user scrolls.
- * 
+ * Each changed document is mapped once, on a background thread, into an immutable item of type T
+ * by a {@link SnapshotParser}. Binding a view only reads the item, so no
+ * {@link DocumentSnapshot#toObject(Class)} or text formatting runs on the main thread as the user
+ * scrolls.
+ *
+ * The snapshot listeners and mapped items live in a {@link LiveQuery} shared by every adapter on
+ * the same query, which keeps listening for a grace period after the adapter stops. Returning to
+ * a screen shortly after leaving it, even in a new activity, shows the results it had straight
+ * away without reading them again. The query can be read in pages, see {@link #loadNextPage()}.
+ *
+ * Each new list is diffed against the list on screen by document ID with {@link DiffUtil}, on a
+ * single background thread in the order the lists arrive. The main thread only swaps in the new
+ * list and dispatches the whole batch of updates at once, however many documents changed. When
+ * the query is swapped with {@link #setQuery(Query)}, or the adapter stops listening, the current
+ * results stay on screen until the next list arrives and are then diffed against it. If the new
+ * query fails before delivering anything, the old results are cleared and {@link #onError} is
+ * called instead.
+ *
  * See the adapter classes in FirebaseUI (https://github.com/firebase/FirebaseUI-Android/tree/master/firestore) for a
  * more efficient implementation of a Firestore RecyclerView Adapter.
  */
-public abstract class FirestoreAdapter<VH extends RecyclerView.ViewHolder>
-        extends RecyclerView.Adapter<VH> implements EventListener<QuerySnapshot> {
+public abstract class FirestoreAdapter<T, VH extends RecyclerView.ViewHolder>
+        extends RecyclerView.Adapter<VH> {
+
+    /**
+     * Maps a document into the item that is bound to a view. Called once per change, on a
+     * background thread, so it may deserialize and format freely. It is kept while the query is
+     * listened to, which can outlive the screen, so it must not hold on to an activity.
+     */
+    public interface SnapshotParser<T> {
+        @WorkerThread
+        T parseSnapshot(DocumentSnapshot snapshot);
+    }
 
     /**
      * Variables needed to handle updates in the Firestore database
      */
-    private static final String TAG = "Firestore Adapter";
     private Query mQuery;
-    private ListenerRegistration mRegistration;
+    private final int mPageSize;
+    private final SnapshotParser<T> mParser;
 
     /**
-     * ArrayList of DocumentSnapshots
+     * The shared listeners of the query while the adapter is listening, null otherwise
      */
-    private ArrayList<DocumentSnapshot> mSnapshots = new ArrayList<>();
+    private LiveQuery<T> mLiveQuery;
+    private final LiveQuery.Observer<T> mObserver = new LiveQuery.Observer<T>() {
+        @Override
+        public void onEntries(List<Entry<T>> entries) {
+            FirestoreAdapter.this.onEntries(entries);
+        }
+
+        @Override
+        public void onError(FirebaseFirestoreException e) {
+            onQueryFailed(e);
+        }
+    };
+
+    /**
+     * True until the query being listened to delivers its first list, while the results shown
+     * may still belong to the previous query
+     */
+    private boolean mAwaitingFirstList;
 
     /**
-     * FireStoreAdapter constructor that takes a Firestore query.
+     * Executors used to diff lists in the background and apply them on the main thread
+     */
+    private final Executor mDiffExecutor = AppExecutors.getSerialExecutor();
+    private final Executor mMainExecutor = AppExecutors.getMainThreadExecutor();
+
+    /**
+     * The entries shown by the adapter, only touched on the main thread
+     */
+    private List<Entry<T>> mEntries = Collections.emptyList();
+
+    /**
+     * The last list diffed in the background, which the next list is diffed against. Only
+     * touched on the diff executor, where it always matches what the main thread will be showing
+     * once the lists queued before it are applied.
+     */
+    private List<Entry<T>> mLatestEntries = Collections.emptyList();
+
+    /**
+     * FireStoreAdapter constructor that takes a Firestore query, read with a single listener.
      * @param query Firestore query
+     * @param parser Maps each document into the item that is bound to a view
      */
-    public FirestoreAdapter(Query query) {
+    public FirestoreAdapter(Query query, SnapshotParser<T> parser) {
+        this(query, 0, parser);
+    }
+
+    /**
+     * FireStoreAdapter constructor that takes a Firestore query, read in pages.
+     * @param query Firestore query, without a limit
+     * @param pageSize Number of documents per page, or 0 to read the whole query with one listener
+     * @param parser Maps each document into the item that is bound to a view
+     */
+    public FirestoreAdapter(Query query, int pageSize, SnapshotParser<T> parser) {
         mQuery = query;
+        mPageSize = pageSize;
+        mParser = parser;
     }
 
     /**
-     * Starts listening for changes to the query.
+     * Starts listening for changes to the query, reusing its listeners if they are still warm.
      */
     public void startListening() {
-        if (mQuery != null && mRegistration == null) {
-            mRegistration = mQuery.addSnapshotListener(this);
+        if (mQuery != null && mLiveQuery == null) {
+            mAwaitingFirstList = true;
+            mLiveQuery = LiveQuery.get(mQuery, mPageSize, mParser);
+            mLiveQuery.observe(mObserver);
         }
     }
 
     /**
-     * Stops listening for changes to the query.
+     * Starts listening to the page after the last one, if the last page has loaded and has ever
+     * been full. Call as the user scrolls near the end of the list. Does nothing without a page size.
      */
-    public void stopListening() {
-        if (mRegistration != null) {
-            mRegistration.remove();
-            mRegistration = null;
+    public void loadNextPage() {
+        if (mLiveQuery != null) {
+            mLiveQuery.loadNextPage();
         }
+    }
 
-        mSnapshots.clear();
-        notifyDataSetChanged();
+    /**
+     * Stops listening for changes to the query. The listeners are kept for a grace period and the
+     * current results stay in the adapter, so listening again soon after is instant.
+     */
+    public void stopListening() {
+        if (mLiveQuery != null) {
+            mLiveQuery.stopObserving(mObserver, LiveQuery.GRACE_PERIOD_MS);
+            mLiveQuery = null;
+        }
     }
 
     /**
-     * Changes with query is being listened too
+     * Changes with query is being listened too. The current results stay displayed until the
+     * new query's first snapshot replaces them.
      */
     public void setQuery(Query query) {
-        // Stop listening
-        stopListening();
-
-        // Clear existing data
-        mSnapshots.clear();
-        notifyDataSetChanged();
+        // Stop listening to the old query, without keeping its listeners
+        if (mLiveQuery != null) {
+            mLiveQuery.stopObserving(mObserver, 0);
+            mLiveQuery = null;
+        }
 
         // Listen to new query
         mQuery = query;
@@ -101,69 +184,48 @@ public abstract class FirestoreAdapter<VH extends RecyclerView.ViewHolder>
     }
 
     /**
-     * Called when a change is detected with the query.
-     * @param documentSnapshots The value of the event. {@code null} if there was an error.
-     * @param e The error if there was error. {@code null} otherwise.
+     * Called with each new list built from the query's results.
+     * @param newEntries The new list
      */
-    @Override
-    public void onEvent(QuerySnapshot documentSnapshots, FirebaseFirestoreException e) {
-        // Handle errors
-        if (e != null) {
-            Log.w(TAG, "onEvent:error", e);
-            return;
-        }
-        // Dispatch the event
-        for (DocumentChange change : documentSnapshots.getDocumentChanges()) {
-        // Snapshot of the changed document
-            DocumentSnapshot snapshot = change.getDocument();
-            switch (change.getType()) {
-                case ADDED:
-                    onDocumentAdded(change);
-                    break;
-                case MODIFIED:
-                    onDocumentModified(change);
-                    break;
-                case REMOVED:
-                    onDocumentRemoved(change);
-                    break;
-            }
-        }
-        onDataChanged();
+    private void onEntries(List<Entry<T>> newEntries) {
+        mAwaitingFirstList = false;
+        mDiffExecutor.execute(() -> publish(newEntries));
     }
 
     /**
-     * Called to add a change to a DocumentSnapshot
-     * @param change A change to process in a document
+     * Called when the query being listened to fails. If it failed before delivering anything,
+     * the results on screen are from an earlier query, so they are cleared rather than passed off
+     * as the results of this one.
+     * @param e The error the query failed with
      */
-    protected void onDocumentAdded(DocumentChange change) {
-        mSnapshots.add(change.getNewIndex(), change.getDocument());
-        notifyItemInserted(change.getNewIndex());
+    private void onQueryFailed(FirebaseFirestoreException e) {
+        if (mAwaitingFirstList) {
+            mAwaitingFirstList = false;
+            mDiffExecutor.execute(() -> publish(Collections.emptyList()));
+        }
+        onError(e);
     }
 
     /**
-     * Called to modify a DocumentSnapshot with a change
-     * @param change A change to process in a document
+     * Diff a new list against the last one and hand both to the main thread, which swaps in the
+     * list and dispatches every update at once. Lists are applied in the order they are published,
+     * so the main thread always ends up showing the last list published.
+     * @param newEntries The new list
      */
-    protected void onDocumentModified(DocumentChange change) {
-        if (change.getOldIndex() == change.getNewIndex()) {
-            // Item changed but remained in same position
-            mSnapshots.set(change.getOldIndex(), change.getDocument());
-            notifyItemChanged(change.getOldIndex());
-        } else {
-            // Item changed and changed position
-            mSnapshots.remove(change.getOldIndex());
-            mSnapshots.add(change.getNewIndex(), change.getDocument());
-            notifyItemMoved(change.getOldIndex(), change.getNewIndex());
+    @WorkerThread
+    private void publish(List<Entry<T>> newEntries) {
+        List<Entry<T>> oldEntries = mLatestEntries;
+        if (oldEntries == newEntries) {
+            return;
         }
-    }
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new EntryDiff<>(oldEntries, newEntries));
+        mLatestEntries = newEntries;
 
-    /**
-     * Called to remove a change from a DocumentSnapshot
-     * @param change A change to process in a document
-     */
-    protected void onDocumentRemoved(DocumentChange change) {
-        mSnapshots.remove(change.getOldIndex());
-        notifyItemRemoved(change.getOldIndex());
+        mMainExecutor.execute(() -> {
+            mEntries = newEntries;
+            diff.dispatchUpdatesTo(this);
+            onDataChanged();
+        });
     }
 
     /**
@@ -172,7 +234,7 @@ public abstract class FirestoreAdapter<VH extends RecyclerView.ViewHolder>
      */
     @Override
     public int getItemCount() {
-        return mSnapshots.size();
+        return mEntries.size();
     }
 
     /**
@@ -181,7 +243,16 @@ public abstract class FirestoreAdapter<VH extends RecyclerView.ViewHolder>
      * @return A DocumentSnapshot
      */
     protected DocumentSnapshot getSnapshot(int index) {
-        return mSnapshots.get(index);
+        return mEntries.get(index).snapshot;
+    }
+
+    /**
+     * Gets the item mapped from the DocumentSnapshot at the index parameter
+     * @param index
+     * @return The item to bind
+     */
+    protected T getItem(int index) {
+        return mEntries.get(index).item;
     }
 
     /**
@@ -192,6 +263,42 @@ public abstract class FirestoreAdapter<VH extends RecyclerView.ViewHolder>
 
     protected void onDataChanged() {}
 
-}
+    /**
+     * Diffs two lists of entries, matching documents by ID. A document whose item was reused or
+     * whose data is unchanged is not rebound.
+     */
+    private static final class EntryDiff<T> extends DiffUtil.Callback {
+
+        private final List<Entry<T>> mOld;
+        private final List<Entry<T>> mNew;
+
+        EntryDiff(List<Entry<T>> oldEntries, List<Entry<T>> newEntries) {
+            mOld = oldEntries;
+            mNew = newEntries;
+        }
 
+        @Override
+        public int getOldListSize() {
+            return mOld.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return mOld.get(oldPosition).snapshot.getId().equals(mNew.get(newPosition).snapshot.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            Entry<T> oldEntry = mOld.get(oldPosition);
+            Entry<T> newEntry = mNew.get(newPosition);
+            return oldEntry.item == newEntry.item
+                    || Objects.equals(oldEntry.snapshot.getData(), newEntry.snapshot.getData());
+        }
+    }
 
+}
\ No newline at end of file
@@ -0,0 +1,364 @@
+package com.example.project2.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
+import com.example.project2.util.AppExecutors;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * The snapshot listeners of a Firestore {@link Query} and the items mapped from its results,
+ * shared by every {@link FirestoreAdapter} showing the same query in this process.
+ *
+ * When the last adapter stops observing, the listeners are kept for a grace period before they
+ * are removed. An adapter that starts observing again within that time, such as the dashboard
+ * after returning from a route's details, gets the results it already had straight away and no
+ * documents are read again.
+ *
+ * With a page size, the query is read in pages, and the next page is only added when
+ * {@link #loadNextPage()} is called, so reads grow with what the user scrolls through rather than
+ * with the size of the collection. Each page has its own listener starting after the end of the
+ * page before it. The last page is limited to the page size. When the next page is added, the
+ * page before it is bound to end at its last document instead, so every page but the last covers
+ * a fixed range of the query. Documents inserted into an earlier page grow that page rather than
+ * pushing its last documents out of every page, and deleting documents shrinks it without
+ * leaving a gap. Every document of the query up to the end of the last page is listed once,
+ * including one that briefly shows up in two pages while a page is being rebound. A last page
+ * that was ever full still counts as full after documents are deleted from it, so deletions do
+ * not end paging.
+ *
+ * Lists are built on the serial background executor, in the order snapshots arrive. Only the
+ * listeners and observers are touched on the main thread.
+ *
+ * When a listener fails, for example because the query needs an index that does not exist, the
+ * error is handed to the observers after any lists built before it, and the query is dropped from
+ * the registry so the next adapter to ask for it tries it again.
+ */
+final class LiveQuery<T> {
+
+    private static final String TAG = "LiveQuery";
+
+    /**
+     * How long the listeners are kept after the last adapter stops observing
+     */
+    static final long GRACE_PERIOD_MS = 60 * 1000;
+
+    /**
+     * Queries being listened to, keyed by query, page size and parser
+     */
+    private static final Map<List<Object>, LiveQuery<?>> REGISTRY = new HashMap<>();
+
+    /**
+     * Listener for the lists built from a query's results, and for the query failing
+     */
+    interface Observer<T> {
+        @MainThread
+        void onEntries(List<Entry<T>> entries);
+
+        @MainThread
+        void onError(FirebaseFirestoreException e);
+    }
+
+    private final List<Object> mKey;
+    private final Query mQuery;
+    private final int mPageSize;
+    private final FirestoreAdapter.SnapshotParser<T> mParser;
+
+    private final Executor mParseExecutor = AppExecutors.getSerialExecutor();
+    private final Executor mMainExecutor = AppExecutors.getMainThreadExecutor();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mRelease = this::release;
+
+    /**
+     * The pages being listened to and the adapters observing, only touched on the main thread
+     */
+    private final List<Page> mPages = new ArrayList<>();
+    private final List<Observer<T>> mObservers = new ArrayList<>();
+    private List<Entry<T>> mEntries;   // Last list delivered to observers, null until the first snapshot
+    private boolean mReleased;
+
+    /**
+     * The last documents received for each page and the last list built from them, only
+     * touched on the parse executor
+     */
+    private final List<List<DocumentSnapshot>> mPageDocuments = new ArrayList<>();
+    private List<Entry<T>> mLatestEntries = Collections.emptyList();
+
+    private LiveQuery(List<Object> key, Query query, int pageSize, FirestoreAdapter.SnapshotParser<T> parser) {
+        mKey = key;
+        mQuery = query;
+        mPageSize = pageSize;
+        mParser = parser;
+    }
+
+    /**
+     * Get the shared listeners of a query, starting them if nothing is listening to it yet.
+     * @param query The query, without a limit if it is read in pages
+     * @param pageSize Number of documents per page, or 0 to read the whole query with one listener
+     * @param parser Maps each document into an item. Must not hold on to an activity, since it is
+     *               kept for as long as the query is listened to
+     * @return The live query, to observe
+     */
+    @MainThread
+    @SuppressWarnings("unchecked")
+    static <T> LiveQuery<T> get(Query query, int pageSize, FirestoreAdapter.SnapshotParser<T> parser) {
+        List<Object> key = Arrays.asList(query, pageSize, parser);
+        LiveQuery<T> live = (LiveQuery<T>) REGISTRY.get(key);
+        if (live == null) {
+            live = new LiveQuery<>(key, query, pageSize, parser);
+            REGISTRY.put(key, live);
+            live.addPage(null);
+        }
+        return live;
+    }
+
+    /**
+     * Start observing the lists built from the query. The last list is delivered straight away
+     * if there is one.
+     * @param observer The observer
+     */
+    @MainThread
+    void observe(Observer<T> observer) {
+        mHandler.removeCallbacks(mRelease);
+        mObservers.add(observer);
+        if (mEntries != null) {
+            observer.onEntries(mEntries);
+        }
+    }
+
+    /**
+     * Stop observing the query. Once nothing observes it, the listeners are removed after the
+     * grace period.
+     * @param observer The observer
+     * @param gracePeriodMs How long to keep the listeners, or 0 to remove them straight away
+     */
+    @MainThread
+    void stopObserving(Observer<T> observer, long gracePeriodMs) {
+        mObservers.remove(observer);
+        if (!mObservers.isEmpty()) {
+            return;
+        }
+        mHandler.removeCallbacks(mRelease);
+        if (gracePeriodMs > 0) {
+            mHandler.postDelayed(mRelease, gracePeriodMs);
+        } else {
+            release();
+        }
+    }
+
+    /**
+     * Starts listening to the page after the last one, if the last page has loaded and has ever
+     * been full. Does nothing without a page size.
+     */
+    @MainThread
+    void loadNextPage() {
+        if (mPageSize <= 0 || mPages.isEmpty() || mReleased) {
+            return;
+        }
+        int lastIndex = mPages.size() - 1;
+        Page last = mPages.get(lastIndex);
+        if (!last.loaded || !last.wasFull || last.lastDocument == null) {
+            return;
+        }
+
+        // Bind the last page to the range it has now, so inserts grow it instead of pushing
+        // documents past the start of the next page
+        DocumentSnapshot end = last.lastDocument;
+        last.registration.remove();
+        listen(lastIndex, startAfter(last.start).endAt(end));
+        addPage(end);
+    }
+
+    /**
+     * Remove the listener of every page and forget the query.
+     */
+    private void release() {
+        if (mReleased || !mObservers.isEmpty()) {
+            return;
+        }
+        mReleased = true;
+        Log.d(TAG, "Removing the " + mPages.size() + " page listeners of an unused query");
+        for (Page page : mPages) {
+            page.registration.remove();
+        }
+        mPages.clear();
+        unregister();
+    }
+
+    /**
+     * Remove the query from the registry, unless it has already been replaced by a new attempt.
+     */
+    private void unregister() {
+        if (REGISTRY.get(mKey) == this) {
+            REGISTRY.remove(mKey);
+        }
+    }
+
+    /**
+     * Start listening to a new last page of the query, limited to the page size.
+     * @param start The last document of the page before it, or null for the first page
+     */
+    private void addPage(DocumentSnapshot start) {
+        Page page = new Page();
+        page.start = start;
+        mPages.add(page);
+        Query query = startAfter(start);
+        listen(mPages.size() - 1, mPageSize > 0 ? query.limit(mPageSize) : query);
+    }
+
+    /**
+     * Get the query starting after a document.
+     * @param start The document to start after, or null to start at the beginning
+     */
+    private Query startAfter(DocumentSnapshot start) {
+        return start != null ? mQuery.startAfter(start) : mQuery;
+    }
+
+    /**
+     * Listen to a page. Any earlier listener of the page must already be removed.
+     * @param index The index of the page
+     * @param pageQuery The query covering the page
+     */
+    private void listen(int index, Query pageQuery) {
+        mPages.get(index).registration = pageQuery.addSnapshotListener(
+                (documentSnapshots, e) -> onEvent(index, documentSnapshots, e));
+    }
+
+    /**
+     * Called when a change is detected with a page of the query.
+     * @param index The index of the page
+     * @param documentSnapshots The value of the event. {@code null} if there was an error.
+     * @param e The error if there was error. {@code null} otherwise.
+     */
+    private void onEvent(int index, QuerySnapshot documentSnapshots, FirebaseFirestoreException e) {
+        if (mReleased) {
+            return;
+        }
+        // Handle errors
+        if (e != null) {
+            Log.w(TAG, "onEvent:error", e);
+            onFailed(e);
+            return;
+        }
+
+        // Remember where the page ends, to start the next page after it. A page that has emptied
+        // keeps its last end, so the documents after it can still be paged to.
+        List<DocumentSnapshot> documents = documentSnapshots.getDocuments();
+        Page page = mPages.get(index);
+        page.loaded = true;
+        page.wasFull |= documents.size() >= mPageSize;
+        if (!documents.isEmpty()) {
+            page.lastDocument = documents.get(documents.size() - 1);
+        }
+
+        // Build the new list in the background, then hand it to the observers on the main thread
+        mParseExecutor.execute(() -> {
+            while (mPageDocuments.size() <= index) {
+                mPageDocuments.add(Collections.emptyList());
+            }
+            mPageDocuments.set(index, documents);
+
+            List<Entry<T>> entries = buildEntries(documentSnapshots.getDocumentChanges());
+            mLatestEntries = entries;
+            mMainExecutor.execute(() -> {
+                mEntries = entries;
+                for (Observer<T> observer : new ArrayList<>(mObservers)) {
+                    observer.onEntries(entries);
+                }
+            });
+        });
+    }
+
+    /**
+     * Drop the failed query from the registry and hand the error to the observers, after any
+     * lists still being built.
+     * @param e The error the listener failed with
+     */
+    private void onFailed(FirebaseFirestoreException e) {
+        unregister();
+        mParseExecutor.execute(() -> mMainExecutor.execute(() -> {
+            for (Observer<T> observer : new ArrayList<>(mObservers)) {
+                observer.onError(e);
+            }
+        }));
+    }
+
+    /**
+     * Build the list of entries from the documents of every page, each document once. Documents
+     * that did not change keep the item already mapped for them, and only added or modified
+     * documents are mapped again.
+     * @param changes The changes of the page snapshot that was just received
+     * @return The new list, in query order
+     */
+    @WorkerThread
+    private List<Entry<T>> buildEntries(List<DocumentChange> changes) {
+        Set<String> changedIds = new HashSet<>();
+        for (DocumentChange change : changes) {
+            changedIds.add(change.getDocument().getId());
+        }
+        Map<String, Entry<T>> oldById = new HashMap<>();
+        for (Entry<T> entry : mLatestEntries) {
+            oldById.put(entry.snapshot.getId(), entry);
+        }
+
+        Set<String> seenIds = new HashSet<>();
+        List<Entry<T>> newEntries = new ArrayList<>();
+        for (List<DocumentSnapshot> documents : mPageDocuments) {
+            for (DocumentSnapshot snapshot : documents) {
+                if (!seenIds.add(snapshot.getId())) {
+                    continue;
+                }
+                Entry<T> old = oldById.get(snapshot.getId());
+                T item = old != null && !changedIds.contains(snapshot.getId())
+                        ? old.item : mParser.parseSnapshot(snapshot);
+                newEntries.add(new Entry<>(snapshot, item));
+            }
+        }
+        return Collections.unmodifiableList(newEntries);
+    }
+
+    /**
+     * A page of the query and where it ends, only touched on the main thread
+     */
+    private static final class Page {
+
+        ListenerRegistration registration;
+        DocumentSnapshot start;    // Last document of the page before, null for the first page
+        boolean loaded;
+        boolean wasFull;    // Ever had a full page, so documents may follow it
+        DocumentSnapshot lastDocument;
+    }
+
+    /**
+     * A document in the results together with the item mapped from it
+     */
+    static final class Entry<T> {
+
+        final DocumentSnapshot snapshot;
+        final T item;
+
+        Entry(DocumentSnapshot snapshot, T item) {
+            this.snapshot = snapshot;
+            this.item = item;
+        }
+    }
+}
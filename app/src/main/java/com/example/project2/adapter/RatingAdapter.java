@@ -16,14 +16,23 @@ import com.google.firebase.firestore.Query;
 /**
  * RecyclerView adapter for displaying a list of Ratings.
  */
-public class RatingAdapter extends FirestoreAdapter<RatingAdapter.ViewHolder> {
+public class RatingAdapter extends FirestoreAdapter<RatingAdapter.Item, RatingAdapter.ViewHolder> {
+
+    /**
+     * Maps a rating document into the item shown in its row, formatting the date once
+     */
+    private static final SnapshotParser<Item> PARSER = snapshot -> {
+        Rating rating = snapshot.toObject(Rating.class);
+        return new Item(rating.getFormattedTimestamp(), (float) rating.getRating(),
+                rating.getUserName(), rating.getText());
+    };
 
     /**
      * Constructor for RatingAdapter that takes a Firestore Query
      * @param query
      */
     public RatingAdapter(Query query) {
-        super(query);
+        super(query, PARSER);
     }
 
     /**
@@ -48,7 +57,25 @@ public class RatingAdapter extends FirestoreAdapter<RatingAdapter.ViewHolder> {
      */
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        holder.bind(getSnapshot(position).toObject(Rating.class));
+        holder.bind(getItem(position));
+    }
+
+    /**
+     * Immutable rating row contents, mapped once per change off the main thread
+     */
+    static final class Item {
+
+        final String date;
+        final float rating;
+        final String userName;
+        final String text;
+
+        Item(String date, float rating, String userName, String text) {
+            this.date = date;
+            this.rating = rating;
+            this.userName = userName;
+            this.text = text;
+        }
     }
 
     /**
@@ -77,14 +104,14 @@ public class RatingAdapter extends FirestoreAdapter<RatingAdapter.ViewHolder> {
         }
 
         /**
-         * Binds a Rating object to a ViewHolder
-         * @param rating
+         * Binds a Rating to a ViewHolder
+         * @param item The rating row contents
          */
-        public void bind(Rating rating) {
-            dateView.setText(rating.getFormattedTimestamp());
-            ratingBar.setRating((float) rating.getRating());
-            usernameView.setText(rating.getUserName());
-            supportingTextView.setText(rating.getText());
+        public void bind(Item item) {
+            dateView.setText(item.date);
+            ratingBar.setRating(item.rating);
+            usernameView.setText(item.userName);
+            supportingTextView.setText(item.text);
         }
     }
 }
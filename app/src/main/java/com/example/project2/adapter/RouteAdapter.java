@@ -1,8 +1,6 @@
 package com.example.project2.adapter;
 
-import android.content.res.Resources;
-import android.graphics.BitmapFactory;
-import android.util.Log;
+import android.graphics.Bitmap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,27 +8,24 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.bumptech.glide.Glide;
 import com.example.project2.R;
+import com.example.project2.image.RoutePhotoLoader;
+import com.example.project2.model.Hold;
 import com.example.project2.model.Route;
-import com.google.android.gms.tasks.OnFailureListener;
-import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
-
-import android.graphics.Bitmap;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * RecyclerView adapter that displays the route previews in the dashboard view
  */
-public class RouteAdapter extends FirestoreAdapter<RouteAdapter.ViewHolder> {
+public class RouteAdapter extends FirestoreAdapter<RouteAdapter.Item, RouteAdapter.ViewHolder> {
 
     /**
      * Interface for handling route selection events
@@ -39,18 +34,33 @@ public class RouteAdapter extends FirestoreAdapter<RouteAdapter.ViewHolder> {
         void onRouteSelected(DocumentSnapshot route);
     }
 
+    /**
+     * Maps a route document into the item shown in its grid tile, formatting the subtitle and
+     * decoding the placeholder once
+     */
+    private static final SnapshotParser<Item> PARSER = snapshot -> {
+        Route route = snapshot.toObject(Route.class);
+        String subtitle = String.format("Location: %s\nDifficulty: %s\nSlope: %s\nRating: %.2f",
+                route.getCity(), route.getDifficulty(), route.getSlope(), route.getAvgRating());
+        List<Hold> holds = route.getHolds() != null
+                ? Collections.unmodifiableList(new ArrayList<>(route.getHolds())) : null;
+        return new Item(route.getTitle(), subtitle, RoutePhotoLoader.getThumbnailPath(route), holds,
+                RoutePhotoLoader.decodePlaceholder(route.getPlaceholder()));
+    };
+
     /**
      * Listener for route selection events
      */
     private OnRouteSelectedListener mListener;
 
     /**
-     * Constructor for RouteAdapter that takes a Firestore Query and a listener
-     * @param query    Firestore query
+     * Constructor for RouteAdapter that takes a Firestore Query read in pages and a listener
+     * @param query    Firestore query, without a limit
+     * @param pageSize Number of routes per page
      * @param listener Listener for route selection events
      */
-    public RouteAdapter(Query query, OnRouteSelectedListener listener) {
-        super(query);
+    public RouteAdapter(Query query, int pageSize, OnRouteSelectedListener listener) {
+        super(query, pageSize, PARSER);
         mListener = listener;
     }
 
@@ -76,7 +86,38 @@ public class RouteAdapter extends FirestoreAdapter<RouteAdapter.ViewHolder> {
      */
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        holder.bind(getSnapshot(position), mListener);
+        holder.bind(getSnapshot(position), getItem(position), mListener);
+    }
+
+    /**
+     * Cancels the photo load of a ViewHolder that has scrolled off screen
+     * @param holder The ViewHolder being recycled
+     */
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        super.onViewRecycled(holder);
+        holder.unbind();
+    }
+
+    /**
+     * Immutable route tile contents, mapped once per change off the main thread
+     */
+    static final class Item {
+
+        final String title;
+        final String subtitle;
+        final String thumbnailPath;
+        @Nullable final List<Hold> holds;
+        @Nullable final Bitmap placeholder;
+
+        Item(String title, String subtitle, String thumbnailPath, @Nullable List<Hold> holds,
+             @Nullable Bitmap placeholder) {
+            this.title = title;
+            this.subtitle = subtitle;
+            this.thumbnailPath = thumbnailPath;
+            this.holds = holds;
+            this.placeholder = placeholder;
+        }
     }
 
     /**
@@ -91,6 +132,11 @@ public class RouteAdapter extends FirestoreAdapter<RouteAdapter.ViewHolder> {
         TextView titleView;
         TextView subtitleView;
 
+        /**
+         * ID of the route document the ViewHolder is bound to, null when recycled
+         */
+        String boundRouteId;
+
         /**
          * Constructor for ViewHolder that takes a View
          * @param itemView
@@ -105,30 +151,22 @@ public class RouteAdapter extends FirestoreAdapter<RouteAdapter.ViewHolder> {
         /**
          * Binds a Route object to a ViewHolder
          * @param snapshot The snapshot of the route
+         * @param item The route tile contents mapped from the snapshot
          * @param listener The listener for route selection events
          */
-        public void bind(final DocumentSnapshot snapshot, final OnRouteSelectedListener listener) {
-            Route route = snapshot.toObject(Route.class);
-            FirebaseStorage storage = FirebaseStorage.getInstance();
-
-            // Create a storage reference from our app
-            StorageReference storageRef = storage.getReferenceFromUrl("gs://project-2-1d31a.firebasestorage.app");
-            StorageReference riversRef = storageRef.child("RoutePhotos/" + route.getTitle() + ".jpeg");
-            riversRef.getBytes(10000000).addOnSuccessListener(new OnSuccessListener<byte[]>() {
-                @Override
-                public void onSuccess(byte[] bytes) {
-                    // Convert the Base64 photo string to a Bitmap
-                    Bitmap photoBitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                    Log.d("Cloud return", Arrays.toString(bytes));
-                    Log.d("Cloud return", bytes.length + "");
-                    // Set the converted Bitmap to the ImageView
-                    iconView.setImageBitmap(photoBitmap);}
-            });
+        public void bind(final DocumentSnapshot snapshot, Item item, final OnRouteSelectedListener listener) {
+            // A holder rebound to a different route cancels the previous route's photo load first
+            if (!snapshot.getId().equals(boundRouteId)) {
+                boundRouteId = snapshot.getId();
+                RoutePhotoLoader.clear(iconView);
+            }
+
+            // Load the route's thumbnail through the shared photo cache
+            RoutePhotoLoader.loadThumbnail(iconView, item.thumbnailPath, item.holds, item.placeholder);
 
             // Set the text for several TextViews
-            titleView.setText(route.getTitle());
-            subtitleView.setText(String.format("Location: %s\nDifficulty: %s\nSlope: %s\nRating: %.2f",
-                    route.getCity(), route.getDifficulty(), route.getSlope(), route.getAvgRating()));
+            titleView.setText(item.title);
+            subtitleView.setText(item.subtitle);
 
             // Click listener
             itemView.setOnClickListener(view -> {
@@ -137,5 +175,13 @@ public class RouteAdapter extends FirestoreAdapter<RouteAdapter.ViewHolder> {
                 }
             });
         }
+
+        /**
+         * Releases the route a ViewHolder is bound to and cancels its in-flight photo load
+         */
+        public void unbind() {
+            boundRouteId = null;
+            RoutePhotoLoader.clear(iconView);
+        }
     }
 }
@@ -0,0 +1,173 @@
+package com.example.project2.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.project2.model.Hold;
+import com.example.project2.util.AppExecutors;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Hands the result of ImageEditActivity to CreateRouteActivity in memory: the photo, the
+ * screen-sized copy already decoded by the editor, and the holds. Nothing has to be written and
+ * decoded again between the two screens.
+ *
+ * The Uri and holds are also written to app storage in the background, so that if the process
+ * is killed between the two screens the edit can still be handed over. CreateRouteActivity keeps
+ * the edit it has taken in its own saved state, and the saved copy is only read to hand over a
+ * result from the editor, so an edit is never restored into a different form. The saved copy is
+ * kept until the form is submitted or closed, so CacheDirectoryManager knows the photo is still
+ * in use. All reads and writes of the saved copy run in order on the disk I/O executor, so a late
+ * write can never undo a clear.
+ */
+public final class EditSession {
+
+    private static final String TAG = "EditSession";
+
+    /**
+     * File in app storage the last edit is saved to
+     */
+    private static final String SESSION_FILE = "edit_session";
+
+    private static EditSession CURRENT;
+
+    private final Uri mPhotoUri;
+    private final ArrayList<Hold> mHolds;
+    @Nullable
+    private final Bitmap mPreview;
+
+    /**
+     * Constructor for EditSession
+     * @param photoUri Uri of the unannotated photo
+     * @param preview Screen-sized copy of the photo, owned by the session from now on
+     * @param holds The holds placed on the photo
+     */
+    public EditSession(Uri photoUri, @Nullable Bitmap preview, ArrayList<Hold> holds) {
+        mPhotoUri = photoUri;
+        mPreview = preview;
+        mHolds = new ArrayList<>(holds);
+    }
+
+    /**
+     * Publish a finished edit for the next screen, and save it to app storage in the background.
+     * @param context Any context
+     * @param session The finished edit
+     */
+    @MainThread
+    public static void publish(Context context, EditSession session) {
+        CURRENT = session;
+        File file = getFile(context);
+        Saved saved = new Saved(session.mPhotoUri.toString(), session.mHolds);
+        AppExecutors.getDiskIoExecutor().execute(() -> {
+            try (ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream(file))) {
+                outputStream.writeObject(saved);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not save edit session", e);
+            }
+        });
+    }
+
+    /**
+     * Take the edit published in this process. The caller owns the preview bitmap afterwards.
+     * @return The edit, or null if there is none in memory
+     */
+    @MainThread
+    @Nullable
+    public static EditSession take() {
+        EditSession session = CURRENT;
+        CURRENT = null;
+        return session;
+    }
+
+    /**
+     * Read the last edit back from app storage, after the process was restarted. The restored
+     * session has no preview. Must run on the disk I/O executor, so it is ordered with
+     * {@link #publish} and {@link #clear}.
+     * @param context Any context
+     * @return The edit, or null if there is none saved
+     */
+    @WorkerThread
+    @Nullable
+    public static EditSession restore(Context context) {
+        File file = getFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        try (ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream(file))) {
+            Saved saved = (Saved) inputStream.readObject();
+            return new EditSession(Uri.parse(saved.photoUri), null, saved.holds);
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            Log.w(TAG, "Could not restore edit session", e);
+            return null;
+        }
+    }
+
+    /**
+     * Forget the last edit, once it has been taken by a form or the form was closed.
+     * @param context Any context
+     */
+    public static void clear(Context context) {
+        CURRENT = null;
+        File file = getFile(context);
+        AppExecutors.getDiskIoExecutor().execute(file::delete);
+    }
+
+    /**
+     * Get the Uri of the unannotated photo
+     * @return The photo Uri
+     */
+    public Uri getPhotoUri() {
+        return mPhotoUri;
+    }
+
+    /**
+     * Get the screen-sized copy of the photo decoded by the editor
+     * @return The preview, or null if the session was restored from app storage
+     */
+    @Nullable
+    public Bitmap getPreview() {
+        return mPreview;
+    }
+
+    /**
+     * Get the holds placed on the photo
+     * @return The holds, in the order they were placed
+     */
+    public ArrayList<Hold> getHolds() {
+        return mHolds;
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), SESSION_FILE);
+    }
+
+    /**
+     * The part of a session that is saved to app storage.
+     */
+    private static class Saved implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String photoUri;
+        private final ArrayList<Hold> holds;
+
+        Saved(String photoUri, ArrayList<Hold> holds) {
+            this.photoUri = photoUri;
+            this.holds = holds;
+        }
+    }
+}
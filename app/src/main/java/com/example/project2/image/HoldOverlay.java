@@ -0,0 +1,132 @@
+package com.example.project2.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import androidx.annotation.ColorRes;
+import androidx.core.content.ContextCompat;
+
+import com.example.project2.R;
+import com.example.project2.model.Hold;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Draws the holds of a route over its photo. Holds are stored relative to the photo, so the same
+ * overlay is drawn at the right place and scale on a thumbnail, the route details view, the
+ * fullscreen viewer or the editor. Each hold is a circle in its limb's color, joined by a line to
+ * the previous hold of the same limb.
+ */
+public class HoldOverlay {
+
+    /**
+     * Radius of a hold circle as a fraction of the photo's shorter edge, and the stroke width as
+     * a fraction of the radius. Close to the 50px circles of a camera-sized photo.
+     */
+    private static final float RADIUS_FRACTION = 1f / 60;
+    private static final float STROKE_FRACTION = 1f / 5;
+
+    private final Map<String, Paint> mPaints = new HashMap<>();
+
+    /**
+     * Constructor for HoldOverlay
+     * @param context Context used to resolve the limb colors
+     */
+    public HoldOverlay(Context context) {
+        for (String limb : new String[]{Hold.LIMB_LEFT_HAND, Hold.LIMB_RIGHT_HAND,
+                Hold.LIMB_LEFT_FOOT, Hold.LIMB_RIGHT_FOOT}) {
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setColor(ContextCompat.getColor(context, getColorRes(limb)));
+            mPaints.put(limb, paint);
+        }
+    }
+
+    /**
+     * Get the color a limb's holds are drawn in.
+     * @param limb One of the Hold LIMB constants
+     * @return The color resource of the limb
+     */
+    @ColorRes
+    public static int getColorRes(String limb) {
+        if (Hold.LIMB_RIGHT_HAND.equals(limb)) {
+            return R.color.solid_green;
+        } else if (Hold.LIMB_LEFT_FOOT.equals(limb)) {
+            return R.color.solid_orange;
+        } else if (Hold.LIMB_RIGHT_FOOT.equals(limb)) {
+            return R.color.solid_red;
+        }
+        return R.color.solid_blue;
+    }
+
+    /**
+     * Get the radius of a hold circle on a photo drawn at the given size.
+     * @param photoBounds Where the photo is drawn on the canvas
+     * @return The radius in canvas pixels
+     */
+    public static float getRadius(RectF photoBounds) {
+        return Math.min(photoBounds.width(), photoBounds.height()) * RADIUS_FRACTION;
+    }
+
+    /**
+     * Draw holds over a photo.
+     * @param canvas The canvas the photo is drawn on
+     * @param holds The holds to draw, in the order they were placed
+     * @param photoBounds Where the photo is drawn on the canvas
+     */
+    public void draw(Canvas canvas, List<Hold> holds, RectF photoBounds) {
+        if (holds == null || holds.isEmpty()) {
+            return;
+        }
+
+        float radius = getRadius(photoBounds);
+        Map<String, Hold> previousHolds = new HashMap<>();
+        for (Hold hold : holds) {
+            Paint paint = getPaint(hold.getLimb(), radius);
+            float x = photoBounds.left + (float) hold.getX() * photoBounds.width();
+            float y = photoBounds.top + (float) hold.getY() * photoBounds.height();
+            canvas.drawCircle(x, y, radius, paint);
+
+            // Join the hold to the previous hold of the same limb, from the edge of one circle to the other
+            Hold previous = previousHolds.put(hold.getLimb(), hold);
+            if (previous != null) {
+                float previousX = photoBounds.left + (float) previous.getX() * photoBounds.width();
+                float previousY = photoBounds.top + (float) previous.getY() * photoBounds.height();
+                double angle = Math.atan2(y - previousY, x - previousX);
+                float deltaX = (float) (radius * Math.cos(angle));
+                float deltaY = (float) (radius * Math.sin(angle));
+                canvas.drawLine(previousX + deltaX, previousY + deltaY, x - deltaX, y - deltaY, paint);
+            }
+        }
+    }
+
+    /**
+     * Draw holds over a copy of a photo, for screens that show a local photo rather than loading
+     * it through Glide.
+     * @param photo The photo, left untouched
+     * @param holds The holds to draw, in the order they were placed
+     * @return A new bitmap of the photo with the holds drawn over it
+     */
+    public Bitmap render(Bitmap photo, List<Hold> holds) {
+        Bitmap result = photo.copy(Bitmap.Config.ARGB_8888, true);
+        draw(new Canvas(result), holds, new RectF(0, 0, result.getWidth(), result.getHeight()));
+        return result;
+    }
+
+    /**
+     * Get the paint of a limb with the stroke width for the current scale.
+     */
+    private Paint getPaint(String limb, float radius) {
+        Paint paint = mPaints.get(limb);
+        if (paint == null) {
+            paint = mPaints.get(Hold.LIMB_LEFT_HAND);
+        }
+        paint.setStrokeWidth(radius * STROKE_FRACTION);
+        return paint;
+    }
+}
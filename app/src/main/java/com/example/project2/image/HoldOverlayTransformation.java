@@ -0,0 +1,76 @@
+package com.example.project2.image;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.resource.bitmap.BitmapTransformation;
+import com.example.project2.model.Hold;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Glide transformation that draws a route's holds over its decoded photo, so the overlay is
+ * rendered at the size each screen decodes the photo to. The result is cached in memory per set
+ * of holds, while the downloaded photo stays shared between every screen.
+ */
+public class HoldOverlayTransformation extends BitmapTransformation {
+
+    private static final String ID = "com.example.project2.image.HoldOverlayTransformation";
+
+    private final HoldOverlay mOverlay;
+    private final List<Hold> mHolds;
+    private final String mHoldsKey;
+
+    /**
+     * Constructor for HoldOverlayTransformation
+     * @param overlay The overlay used to draw the holds
+     * @param holds The holds of the route
+     */
+    public HoldOverlayTransformation(HoldOverlay overlay, List<Hold> holds) {
+        mOverlay = overlay;
+        mHolds = new ArrayList<>(holds);
+
+        StringBuilder key = new StringBuilder(ID);
+        for (Hold hold : mHolds) {
+            key.append(';').append(hold.getLimb())
+                    .append(',').append(hold.getX())
+                    .append(',').append(hold.getY())
+                    .append(',').append(hold.getOrder());
+        }
+        mHoldsKey = key.toString();
+    }
+
+    @Override
+    protected Bitmap transform(@NonNull BitmapPool pool, @NonNull Bitmap toTransform, int outWidth, int outHeight) {
+        // The ImageView scales the result, so the overlay is drawn at the decoded size
+        Bitmap.Config config = toTransform.getConfig() != null ? toTransform.getConfig() : Bitmap.Config.ARGB_8888;
+        Bitmap result = pool.get(toTransform.getWidth(), toTransform.getHeight(), config);
+        Canvas canvas = new Canvas(result);
+        canvas.drawBitmap(toTransform, 0, 0, null);
+        mOverlay.draw(canvas, mHolds, new RectF(0, 0, result.getWidth(), result.getHeight()));
+        canvas.setBitmap(null);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof HoldOverlayTransformation
+                && mHoldsKey.equals(((HoldOverlayTransformation) o).mHoldsKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHoldsKey.hashCode();
+    }
+
+    @Override
+    public void updateDiskCacheKey(@NonNull MessageDigest messageDigest) {
+        messageDigest.update(mHoldsKey.getBytes(CHARSET));
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.project2.image;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+import com.example.project2.model.Hold;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * View that lets the user place holds over a photo. It sits on top of the ImageView showing the
+ * photo and draws only the holds, so the photo is uploaded to the screen once and never redrawn
+ * while editing. A change redraws the whole overlay, which is only the holds: partial
+ * invalidation is ignored under hardware acceleration, and the saving comes from keeping the
+ * photo in its own view.
+ *
+ * Placing a hold is recorded as a command in a log, which can be undone and redone. Undo only
+ * moves the last command to the redo stack and redraws the overlay, so no bitmaps are kept and
+ * memory stays flat however many edits are made.
+ *
+ * The photo is assumed to be shown centered and scaled to fit, the ImageView default.
+ */
+public class HoldOverlayView extends View {
+
+    /**
+     * Listener for changes to the placed holds, for example to update undo and redo buttons.
+     */
+    public interface OnHoldsChangedListener {
+        void onHoldsChanged(HoldOverlayView view);
+    }
+
+    private final HoldOverlay mOverlay;
+    private final ArrayList<Hold> mHolds = new ArrayList<>();        // Log of applied hold placements
+    private final ArrayDeque<Hold> mRedoStack = new ArrayDeque<>();  // Undone placements, most recent first
+    private final RectF mPhotoBounds = new RectF();
+
+    private int mPhotoWidth;
+    private int mPhotoHeight;
+    private String mLimb = Hold.LIMB_LEFT_HAND;
+    @Nullable
+    private OnHoldsChangedListener mListener;
+
+    public HoldOverlayView(Context context) {
+        this(context, null);
+    }
+
+    public HoldOverlayView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        mOverlay = new HoldOverlay(context);
+    }
+
+    /**
+     * Set the size of the photo the holds are placed on, so touches can be mapped onto it.
+     * @param width The width of the photo in pixels
+     * @param height The height of the photo in pixels
+     */
+    public void setPhotoSize(int width, int height) {
+        mPhotoWidth = width;
+        mPhotoHeight = height;
+        updatePhotoBounds();
+        invalidate();
+    }
+
+    /**
+     * Set the limb that the next holds are placed for.
+     * @param limb One of the Hold LIMB constants
+     */
+    public void setLimb(String limb) {
+        mLimb = limb;
+    }
+
+    /**
+     * Get the holds placed so far.
+     * @return The holds, in the order they were placed
+     */
+    public ArrayList<Hold> getHolds() {
+        return new ArrayList<>(mHolds);
+    }
+
+    /**
+     * Set the listener notified when holds are placed, undone or redone.
+     * @param listener The listener, or null to remove it
+     */
+    public void setOnHoldsChangedListener(@Nullable OnHoldsChangedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Add a hold and redraw the overlay. Placing a new hold clears the redo stack.
+     * @param hold The hold to add
+     */
+    public void addHold(Hold hold) {
+        mRedoStack.clear();
+        applyHold(hold);
+    }
+
+    /**
+     * Check if there is a placed hold to undo.
+     * @return true if undo() would remove a hold
+     */
+    public boolean canUndo() {
+        return !mHolds.isEmpty();
+    }
+
+    /**
+     * Check if there is an undone hold to redo.
+     * @return true if redo() would restore a hold
+     */
+    public boolean canRedo() {
+        return !mRedoStack.isEmpty();
+    }
+
+    /**
+     * Remove the last placed hold, keeping it so it can be redone.
+     */
+    public void undo() {
+        if (!canUndo()) {
+            return;
+        }
+        mRedoStack.push(mHolds.remove(mHolds.size() - 1));
+        invalidate();
+        notifyHoldsChanged();
+    }
+
+    /**
+     * Place the last undone hold again.
+     */
+    public void redo() {
+        if (!canRedo()) {
+            return;
+        }
+        applyHold(mRedoStack.pop());
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updatePhotoBounds();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        mOverlay.draw(canvas, mHolds, mPhotoBounds);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mPhotoBounds.isEmpty()) {
+            return false;
+        }
+
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            if (!mPhotoBounds.contains(event.getX(), event.getY())) {
+                return false;
+            }
+            double x = (event.getX() - mPhotoBounds.left) / mPhotoBounds.width();
+            double y = (event.getY() - mPhotoBounds.top) / mPhotoBounds.height();
+            addHold(new Hold(mLimb, x, y, mHolds.size()));
+            return true;
+        } else if (event.getActionMasked() == MotionEvent.ACTION_UP) {
+            performClick();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    /**
+     * Apply a hold placement to the log and redraw the overlay.
+     */
+    private void applyHold(Hold hold) {
+        mHolds.add(hold);
+        invalidate();
+        notifyHoldsChanged();
+    }
+
+    private void notifyHoldsChanged() {
+        if (mListener != null) {
+            mListener.onHoldsChanged(this);
+        }
+    }
+
+    /**
+     * Work out where the photo is drawn in this view, centered and scaled to fit.
+     */
+    private void updatePhotoBounds() {
+        if (mPhotoWidth <= 0 || mPhotoHeight <= 0 || getWidth() == 0 || getHeight() == 0) {
+            mPhotoBounds.setEmpty();
+            return;
+        }
+
+        float scale = Math.min((float) getWidth() / mPhotoWidth, (float) getHeight() / mPhotoHeight);
+        float width = mPhotoWidth * scale;
+        float height = mPhotoHeight * scale;
+        float left = (getWidth() - width) / 2;
+        float top = (getHeight() - height) / 2;
+        mPhotoBounds.set(left, top, left + width, top + height);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.project2.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.project2.util.CacheDirectoryManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes local photos, such as the one just taken with the camera. Screens that only show the
+ * photo decode a copy sized for the screen, and uploads decode a copy no larger than the largest
+ * rendition, so memory use is bounded by what is needed rather than the camera resolution.
+ */
+public final class PhotoDecoder {
+
+    private static final String TAG = "PhotoDecoder";
+
+    private PhotoDecoder() {}
+
+    /**
+     * Decode a photo no larger than maxWidth by maxHeight, keeping its aspect ratio. The bounds
+     * are read first so the photo is subsampled while it is decoded, and only the remaining
+     * difference is scaled afterwards.
+     * @param context Context used to open the photo
+     * @param uri The Uri of the photo
+     * @param maxWidth The largest allowed width in pixels
+     * @param maxHeight The largest allowed height in pixels
+     * @return The scaled photo, or null if it cannot be read
+     */
+    @WorkerThread
+    @Nullable
+    public static Bitmap decodeToFit(Context context, Uri uri, int maxWidth, int maxHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(context, uri, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // Largest power of two that keeps the decoded photo at least as big as the target
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= maxWidth
+                && options.outHeight / (sampleSize * 2) >= maxHeight) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap sampled = decode(context, uri, options);
+        if (sampled == null) {
+            return null;
+        }
+
+        float scale = Math.min((float) maxWidth / sampled.getWidth(), (float) maxHeight / sampled.getHeight());
+        if (scale >= 1) {
+            return sampled;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled,
+                Math.max(1, Math.round(sampled.getWidth() * scale)),
+                Math.max(1, Math.round(sampled.getHeight() * scale)), true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * Decode a photo with the given options.
+     */
+    @Nullable
+    private static Bitmap decode(Context context, Uri uri, BitmapFactory.Options options) {
+        // Opening a cached photo makes it the last to be trimmed
+        CacheDirectoryManager.getInstance(context).markUsed(uri);
+        try (InputStream inputStream = context.getContentResolver().openInputStream(uri)) {
+            if (inputStream == null) {
+                return null;
+            }
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "Could not decode photo " + uri, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.project2.image;
+
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.storage.FileDownloadTask;
+import com.google.firebase.storage.StorageReference;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Single-flight downloader for Cloud Storage objects. Concurrent requests for the same storage
+ * path attach to one in-flight download instead of each starting their own transfer, so opening
+ * the grid, the route details view and the fullscreen viewer in quick succession costs one
+ * download per photo.
+ *
+ * The object is streamed to a temporary file rather than buffered in a byte array, and every
+ * waiting request gets its own stream over that file, so the decoder reads straight from disk and
+ * the peak heap per photo is the decoded bitmap. Completion is handled on a background executor,
+ * never on the main thread.
+ */
+public class PhotoDownloadCoalescer {
+
+    private static final String TAG = "PhotoDownloadCoalescer";
+
+    /**
+     * Prefix of the temporary download files
+     */
+    private static final String FILE_PREFIX = "download_";
+
+    /**
+     * Receives the result of a download.
+     */
+    public interface Listener {
+        /**
+         * Called when the object has been downloaded.
+         * @param stream A stream over the downloaded object, to be closed by the listener
+         */
+        void onDownloaded(InputStream stream);
+
+        /**
+         * Called when the download failed.
+         * @param e The reason for the failure
+         */
+        void onFailed(Exception e);
+    }
+
+    /**
+     * Folder the in-flight downloads are written to
+     */
+    private final File mDirectory;
+
+    /**
+     * Executor the downloaded files are handed to the listeners on
+     */
+    private final Executor mExecutor;
+
+    /**
+     * In-flight downloads keyed by storage path
+     */
+    private final Map<String, Download> mDownloads = new HashMap<>();
+
+    /**
+     * Prefix of this instance's files, so cleaning up the files left behind by a previous process
+     * never deletes a download that is in flight
+     */
+    private final String mFilePrefix = FILE_PREFIX + System.currentTimeMillis() + "_";
+
+    /**
+     * Number of downloads started, used to name the temporary files
+     */
+    private long mDownloadCount;
+
+    /**
+     * PhotoDownloadCoalescer constructor that takes the folder for temporary files. Files left
+     * behind by a previous process are deleted in the background.
+     * @param directory Folder to write in-flight downloads to
+     * @param executor Background executor the listeners are called on
+     */
+    public PhotoDownloadCoalescer(File directory, Executor executor) {
+        mDirectory = directory;
+        mExecutor = executor;
+        mExecutor.execute(() -> {
+            File[] leftovers = directory.listFiles((dir, name) ->
+                    name.startsWith(FILE_PREFIX) && !name.startsWith(mFilePrefix));
+            if (leftovers != null) {
+                for (File file : leftovers) {
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Download an object, or attach to the download of it that is already in flight.
+     * @param reference The Cloud Storage object to download
+     * @param listener Receives the downloaded object
+     * @return A handle that can cancel the request
+     */
+    public synchronized Request download(StorageReference reference, Listener listener) {
+        String path = reference.getPath();
+        Download download = mDownloads.get(path);
+        if (download == null) {
+            if (!mDirectory.exists()) {
+                mDirectory.mkdirs();
+            }
+            File file = new File(mDirectory, mFilePrefix + (mDownloadCount++));
+            download = new Download(path, file);
+            mDownloads.put(path, download);
+            download.start(reference);
+        }
+        download.mListeners.add(listener);
+        return new Request(download, listener);
+    }
+
+    /**
+     * Detach a listener from a download, and cancel the transfer if nobody else is waiting for it.
+     * @param download The download the listener is attached to
+     * @param listener The listener to detach
+     */
+    private synchronized void cancel(Download download, Listener listener) {
+        if (!download.mListeners.remove(listener) || !download.mListeners.isEmpty()) {
+            return;
+        }
+        if (mDownloads.get(download.mPath) == download) {
+            mDownloads.remove(download.mPath);
+            download.mTask.cancel();
+        }
+    }
+
+    /**
+     * Hand the downloaded file to every listener that is still waiting for it.
+     * @param download The finished download
+     * @param task The finished transfer
+     */
+    private void onComplete(Download download, Task<FileDownloadTask.TaskSnapshot> task) {
+        List<Listener> listeners;
+        synchronized (this) {
+            if (mDownloads.get(download.mPath) == download) {
+                mDownloads.remove(download.mPath);
+            }
+            listeners = new ArrayList<>(download.mListeners);
+            download.mListeners.clear();
+        }
+
+        for (Listener listener : listeners) {
+            if (!task.isSuccessful()) {
+                Exception e = task.getException();
+                listener.onFailed(e != null ? e : new IOException("Download cancelled: " + download.mPath));
+                continue;
+            }
+            try {
+                listener.onDownloaded(new FileInputStream(download.mFile));
+            } catch (IOException e) {
+                listener.onFailed(e);
+            }
+        }
+
+        // Streams that are already open keep reading the unlinked file
+        if (!download.mFile.delete() && download.mFile.exists()) {
+            Log.w(TAG, "Could not delete " + download.mFile);
+        }
+    }
+
+    /**
+     * A transfer of one storage path, shared by every request for it.
+     */
+    private class Download {
+
+        private final String mPath;
+        private final File mFile;
+        private final List<Listener> mListeners = new ArrayList<>();
+        private FileDownloadTask mTask;
+
+        Download(String path, File file) {
+            mPath = path;
+            mFile = file;
+        }
+
+        void start(StorageReference reference) {
+            mTask = reference.getFile(mFile);
+            mTask.addOnCompleteListener(mExecutor, task -> onComplete(this, task));
+        }
+    }
+
+    /**
+     * Handle for one request attached to a download.
+     */
+    public class Request {
+
+        private final Download mDownload;
+        private final Listener mListener;
+
+        Request(Download download, Listener listener) {
+            mDownload = download;
+            mListener = listener;
+        }
+
+        /**
+         * Stop waiting for the download. The transfer itself is cancelled once no request is
+         * waiting for it.
+         */
+        public void cancel() {
+            PhotoDownloadCoalescer.this.cancel(mDownload, mListener);
+        }
+    }
+}
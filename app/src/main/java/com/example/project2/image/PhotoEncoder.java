@@ -0,0 +1,139 @@
+package com.example.project2.image;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Compresses a bitmap to the highest quality that still fits a byte budget. The quality is found
+ * with a binary search. Images are encoded as WebP rather than JPEG, since every API level the
+ * app supports can encode and decode it and it is noticeably smaller at the same quality.
+ */
+public final class PhotoEncoder {
+
+    /**
+     * MIME type of the encoded images
+     */
+    public static final String CONTENT_TYPE = "image/webp";
+
+    /**
+     * File extension of the encoded images
+     */
+    public static final String EXTENSION = ".webp";
+
+    /**
+     * Range of qualities the search is allowed to pick from. Below the minimum, photos get too
+     * blocky to pick out holds, so a photo that does not fit its budget at the minimum is
+     * returned over budget, for the caller to scale down.
+     */
+    private static final int MIN_QUALITY = 30;
+    private static final int MAX_QUALITY = 90;
+
+    private PhotoEncoder() {}
+
+    /**
+     * Compress a bitmap to the highest quality that fits in maxBytes. This compresses the bitmap
+     * several times and must be called off the main thread.
+     * @param bitmap The bitmap to compress
+     * @param maxBytes The byte budget of the compressed image
+     * @return The compressed image along with the format and quality that were chosen. If no
+     *         quality fits, the smallest attempt, which may be over budget.
+     */
+    public static Result encode(Bitmap bitmap, int maxBytes) {
+        Bitmap.CompressFormat format = getFormat();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(maxBytes);
+
+        // Binary search for the highest quality that fits the budget
+        int low = MIN_QUALITY;
+        int high = MAX_QUALITY;
+        byte[] best = null;
+        int bestQuality = MIN_QUALITY;
+        byte[] smallest = null;
+        int smallestQuality = MIN_QUALITY;
+        while (low <= high) {
+            int quality = (low + high) >>> 1;
+            byte[] bytes = compress(bitmap, format, quality, outputStream);
+            if (bytes.length <= maxBytes) {
+                best = bytes;
+                bestQuality = quality;
+                low = quality + 1;
+            } else {
+                // Keep the smallest attempt in case nothing fits, instead of compressing again
+                if (smallest == null || bytes.length < smallest.length) {
+                    smallest = bytes;
+                    smallestQuality = quality;
+                }
+                high = quality - 1;
+            }
+        }
+
+        if (best == null) {
+            return new Result(smallest, CONTENT_TYPE, smallestQuality);
+        }
+        return new Result(best, CONTENT_TYPE, bestQuality);
+    }
+
+    /**
+     * Get the best lossy format this API level can encode.
+     * @return WebP, the explicitly lossy variant where it exists
+     */
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat getFormat() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return Bitmap.CompressFormat.WEBP_LOSSY;
+        }
+        // Before API 30 WEBP is lossy for every quality below 100
+        return Bitmap.CompressFormat.WEBP;
+    }
+
+    /**
+     * Compress a bitmap once, reusing the output buffer between attempts.
+     */
+    private static byte[] compress(Bitmap bitmap, Bitmap.CompressFormat format, int quality,
+                                   ByteArrayOutputStream outputStream) {
+        outputStream.reset();
+        bitmap.compress(format, quality, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * A compressed image and the parameters it was compressed with.
+     */
+    public static class Result {
+
+        private final byte[] mBytes;
+        private final String mContentType;
+        private final int mQuality;
+
+        Result(byte[] bytes, String contentType, int quality) {
+            mBytes = bytes;
+            mContentType = contentType;
+            mQuality = quality;
+        }
+
+        /**
+         * Get the compressed image
+         * @return The encoded bytes
+         */
+        public byte[] getBytes() {
+            return mBytes;
+        }
+
+        /**
+         * Get the MIME type of the format that was chosen
+         * @return The content type of the encoded bytes
+         */
+        public String getContentType() {
+            return mContentType;
+        }
+
+        /**
+         * Get the quality that was chosen
+         * @return The quality from 0 to 100
+         */
+        public int getQuality() {
+            return mQuality;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.project2.image;
+
+import android.graphics.Bitmap;
+import android.util.Base64;
+import android.util.Log;
+
+import com.example.project2.model.PhotoRendition;
+import com.example.project2.model.Route;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates the sizes of a route photo that are uploaded when a route is created. The dashboard
+ * grid, the route details view and the fullscreen viewer each download only the size they show.
+ *
+ * Every rendition is stored under the SHA-256 hash of its bytes, so a stored photo never changes
+ * and can be cached forever, routes with the same title no longer overwrite each other's photos,
+ * and identical photos are only stored once.
+ */
+public final class PhotoRenditions {
+
+    private static final String TAG = "PhotoRenditions";
+
+    /**
+     * Names of the renditions, used in their storage paths
+     */
+    public static final String THUMBNAIL = "thumbnail";
+    public static final String MEDIUM = "medium";
+    public static final String FULL = "full";
+
+    /**
+     * Longest edge in pixels of the grid thumbnail (the 80dp tile at xxxhdpi)
+     */
+    public static final int THUMBNAIL_MAX_EDGE = 320;
+
+    /**
+     * Longest edge in pixels of the photo shown in the route details view
+     */
+    public static final int MEDIUM_MAX_EDGE = 1280;
+
+    /**
+     * Longest edge in pixels of the full size photo for the fullscreen viewer. Camera photos are
+     * larger than anything the viewer needs, and encoding them at full resolution is slow.
+     */
+    public static final int FULL_MAX_EDGE = 2048;
+
+    /**
+     * Longest edge in pixels of the placeholder stored on the route document
+     */
+    public static final int PLACEHOLDER_MAX_EDGE = 16;
+
+    /**
+     * Byte budget of each rendition. The encoder picks the highest quality that fits the budget,
+     * so small or simple photos are not made blockier than they need to be. A rendition that does
+     * not fit at the lowest quality is scaled down until it does.
+     */
+    public static final int THUMBNAIL_MAX_BYTES = 24 * 1024;
+    public static final int MEDIUM_MAX_BYTES = 200 * 1024;
+    public static final int FULL_MAX_BYTES = 800 * 1024;
+    private static final int PLACEHOLDER_MAX_BYTES = 512;
+
+    /**
+     * How much a rendition is scaled down each time it does not fit its budget, and the edge below
+     * which it is left over budget rather than shrunk further
+     */
+    private static final float OVER_BUDGET_SCALE = 0.75f;
+    private static final int MIN_EDGE = 64;
+
+    /**
+     * Folder in the storage bucket that holds the content-addressed route photos
+     */
+    private static final String PHOTO_FOLDER = "RoutePhotos/sha256/";
+
+    /**
+     * Cache-Control header stored with every rendition. The object at a content-addressed path
+     * never changes, so caches never need to revalidate it.
+     */
+    public static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private PhotoRenditions() {}
+
+    /**
+     * Get the content-addressed storage path of an encoded rendition.
+     * @param bytes The encoded rendition
+     * @return The path of the rendition in the storage bucket, named after the hash of its bytes
+     */
+    public static String getPath(byte[] bytes) {
+        return PHOTO_FOLDER + sha256(bytes) + PhotoEncoder.EXTENSION;
+    }
+
+    /**
+     * Scale a bitmap down so its longest edge is at most maxEdge, keeping its aspect ratio.
+     * @param source The bitmap to scale
+     * @param maxEdge The longest allowed edge in pixels
+     * @return The scaled bitmap, or the source itself if it is already small enough
+     */
+    public static Bitmap scaleToFit(Bitmap source, int maxEdge) {
+        int longestEdge = Math.max(source.getWidth(), source.getHeight());
+        if (longestEdge <= maxEdge) {
+            return source;
+        }
+
+        float scale = (float) maxEdge / longestEdge;
+        int width = Math.max(1, Math.round(source.getWidth() * scale));
+        int height = Math.max(1, Math.round(source.getHeight() * scale));
+        return Bitmap.createScaledBitmap(source, width, height, true);
+    }
+
+    /**
+     * Scale and compress every rendition of a route photo. This is CPU heavy on camera-sized
+     * photos and must be called off the main thread.
+     * @param source The full size photo, left untouched
+     * @return The encoded thumbnail, medium and full renditions, in that order
+     */
+    public static List<Encoded> encodeAll(Bitmap source) {
+        List<Encoded> renditions = new ArrayList<>();
+        renditions.add(encodeScaled(THUMBNAIL, source, THUMBNAIL_MAX_EDGE, THUMBNAIL_MAX_BYTES));
+        renditions.add(encodeScaled(MEDIUM, source, MEDIUM_MAX_EDGE, MEDIUM_MAX_BYTES));
+        renditions.add(encodeScaled(FULL, source, FULL_MAX_EDGE, FULL_MAX_BYTES));
+        return renditions;
+    }
+
+    /**
+     * Create the placeholder of a route photo, a preview small enough to be stored on the route
+     * document and shown while the photo downloads. The photo is scaled down in two steps so the
+     * placeholder averages the whole photo instead of sampling a few pixels of it.
+     * @param source The full size photo, left untouched
+     * @return The placeholder as a Base64 encoded image
+     */
+    public static String createPlaceholder(Bitmap source) {
+        Bitmap thumbnail = scaleToFit(source, THUMBNAIL_MAX_EDGE);
+        Bitmap placeholder = scaleToFit(thumbnail, PLACEHOLDER_MAX_EDGE);
+        byte[] bytes = PhotoEncoder.encode(placeholder, PLACEHOLDER_MAX_BYTES).getBytes();
+        if (placeholder != thumbnail) {
+            placeholder.recycle();
+        }
+        if (thumbnail != source) {
+            thumbnail.recycle();
+        }
+        return Base64.encodeToString(bytes, Base64.NO_WRAP);
+    }
+
+    /**
+     * Record the storage paths and sizes of encoded renditions on a route.
+     * @param route The route the renditions belong to
+     * @param renditions The renditions from {@link #encodeAll(Bitmap)}
+     */
+    public static void applyTo(Route route, List<Encoded> renditions) {
+        for (Encoded encoded : renditions) {
+            switch (encoded.getName()) {
+                case THUMBNAIL:
+                    route.setThumbnail(encoded.getRendition());
+                    break;
+                case MEDIUM:
+                    route.setMedium(encoded.getRendition());
+                    break;
+                case FULL:
+                    route.setFull(encoded.getRendition());
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Scale down and compress one rendition, freeing the scaled copy afterwards. If the rendition
+     * does not fit its budget even at the lowest quality, it is scaled down further and tried again.
+     */
+    private static Encoded encodeScaled(String rendition, Bitmap source, int maxEdge, int maxBytes) {
+        while (true) {
+            Bitmap scaled = scaleToFit(source, maxEdge);
+            Encoded encoded = encode(rendition, scaled, maxBytes);
+            if (scaled != source) {
+                scaled.recycle();
+            }
+            int longestEdge = Math.max(encoded.getRendition().getWidth(), encoded.getRendition().getHeight());
+            if (encoded.getBytes().length <= maxBytes || longestEdge <= MIN_EDGE) {
+                return encoded;
+            }
+            maxEdge = Math.max(MIN_EDGE, (int) (longestEdge * OVER_BUDGET_SCALE));
+        }
+    }
+
+    /**
+     * Compress one rendition within its byte budget and log the parameters that were chosen.
+     */
+    private static Encoded encode(String rendition, Bitmap bitmap, int maxBytes) {
+        PhotoEncoder.Result result = PhotoEncoder.encode(bitmap, maxBytes);
+        Log.d(TAG, "Encoded " + rendition + " " + bitmap.getWidth() + "x" + bitmap.getHeight() + " as "
+                + result.getContentType() + " q" + result.getQuality() + ": " + result.getBytes().length + " bytes");
+        return new Encoded(rendition, bitmap.getWidth(), bitmap.getHeight(), result);
+    }
+
+    /**
+     * Hash bytes with SHA-256.
+     * @return The hash as lowercase hex
+     */
+    private static String sha256(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android version provides SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A compressed rendition that is ready to be uploaded.
+     */
+    public static class Encoded {
+
+        private final String mName;
+        private final PhotoRendition mRendition;
+        private final PhotoEncoder.Result mResult;
+
+        Encoded(String name, int width, int height, PhotoEncoder.Result result) {
+            mName = name;
+            mRendition = new PhotoRendition(getPath(result.getBytes()), width, height);
+            mRendition.setContentType(result.getContentType());
+            mRendition.setQuality(result.getQuality());
+            mRendition.setByteSize(result.getBytes().length);
+            mResult = result;
+        }
+
+        /**
+         * Get the name of the rendition (thumbnail, medium or full)
+         * @return The rendition name
+         */
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * Get the storage path, size and encoding parameters of the rendition, to be saved on the route
+         * @return The rendition's PhotoRendition
+         */
+        public PhotoRendition getRendition() {
+            return mRendition;
+        }
+
+        /**
+         * Get the compressed image
+         * @return The encoded bytes
+         */
+        public byte[] getBytes() {
+            return mResult.getBytes();
+        }
+
+        /**
+         * Get the MIME type of the compressed image
+         * @return The content type to upload the rendition with
+         */
+        public String getContentType() {
+            return mResult.getContentType();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.project2.image;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.AppGlideModule;
+import com.google.firebase.storage.StorageReference;
+
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * Glide configuration for the app. Registers the {@link StorageReferenceLoader} so route photos
+ * can be loaded straight from Firebase Cloud Storage, and sizes the memory and disk caches that
+ * keep a photo from being downloaded more than once per device.
+ */
+@GlideModule
+public final class RouteGlideModule extends AppGlideModule {
+
+    /**
+     * Name of the folder in the app's cache directory that holds downloaded route photos
+     */
+    private static final String DISK_CACHE_DIR = "route_photos";
+
+    /**
+     * Maximum size of the on-disk photo cache
+     */
+    private static final long DISK_CACHE_SIZE = 100L * 1024 * 1024;
+
+    /**
+     * Name of the folder in the app's cache directory that holds photos still being downloaded
+     */
+    private static final String DOWNLOAD_DIR = "photo_downloads";
+
+    /**
+     * Sets up the memory and disk caches.
+     * @param context Application context
+     * @param builder Builder used to create the Glide singleton
+     */
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context).build();
+        builder.setMemoryCache(new LruResourceCache(calculator.getMemoryCacheSize()));
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, DISK_CACHE_DIR, DISK_CACHE_SIZE));
+    }
+
+    /**
+     * Lets Glide accept a {@link StorageReference} as a model.
+     * @param context Application context
+     * @param glide The Glide singleton
+     * @param registry Registry of Glide's loaders and decoders
+     */
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide, @NonNull Registry registry) {
+        File downloadDirectory = new File(context.getCacheDir(), DOWNLOAD_DIR);
+        registry.append(StorageReference.class, InputStream.class,
+                new StorageReferenceLoader.Factory(downloadDirectory));
+    }
+
+    /**
+     * No manifest-declared Glide modules are used, so skip parsing the manifest for them.
+     * @return false
+     */
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
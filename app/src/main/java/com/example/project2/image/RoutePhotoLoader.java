@@ -0,0 +1,269 @@
+package com.example.project2.image;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.Base64;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.bumptech.glide.load.resource.drawable.DrawableTransitionOptions;
+import com.bumptech.glide.request.target.CustomTarget;
+import com.bumptech.glide.request.target.CustomViewTarget;
+import com.bumptech.glide.request.transition.Transition;
+import com.example.project2.R;
+import com.example.project2.model.Hold;
+import com.example.project2.model.PhotoRendition;
+import com.example.project2.model.Route;
+import com.example.project2.util.FirebaseUtil;
+import com.google.firebase.storage.StorageReference;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Loads route photos from Firebase Cloud Storage into ImageViews through Glide, so every screen
+ * shares the same memory and disk cache instead of downloading the photo on each bind.
+ *
+ * Each screen decodes the photo for its own target size. Glide reads the image bounds first and
+ * then decodes with an inSampleSize (and scaling) that fits the target, so a full camera-resolution
+ * photo is never held in memory just to fill a small tile. The route's holds are drawn over the
+ * decoded photo, since the uploaded photo itself is not annotated.
+ *
+ * Until the photo is ready, the tiny placeholder stored on the route document is shown, so tiles
+ * are never blank, and the photo fades in over it.
+ */
+public final class RoutePhotoLoader {
+
+    private static final String TAG = "RoutePhotoLoader";
+
+    /**
+     * Folder in the storage bucket that holds the route photos
+     */
+    private static final String PHOTO_FOLDER = "RoutePhotos/";
+
+    /**
+     * Decoded placeholders, keyed by their Base64 string. Each is only a few hundred bytes.
+     */
+    private static final LruCache<String, Bitmap> PLACEHOLDERS = new LruCache<>(200);
+
+    private RoutePhotoLoader() {}
+
+    /**
+     * Get the storage path of a rendition of a route's photo. Routes created before renditions
+     * were uploaded only have the single photo stored under the route's title.
+     * @param rendition The rendition to load, or null if the route has none
+     * @param routeTitle The title of the route
+     * @return The path of the photo in the storage bucket
+     */
+    public static String getPath(@Nullable PhotoRendition rendition, String routeTitle) {
+        if (rendition != null && rendition.getPath() != null) {
+            return rendition.getPath();
+        }
+        return PHOTO_FOLDER + routeTitle + ".jpeg";
+    }
+
+    /**
+     * Get the storage path of the medium photo of a route.
+     * @param route The route
+     * @return The path of the medium photo in the storage bucket
+     */
+    public static String getMediumPath(Route route) {
+        return getPath(route.getMedium(), route.getTitle());
+    }
+
+    /**
+     * Get the storage path of the full size photo of a route, for the fullscreen viewer.
+     * @param route The route
+     * @return The path of the full size photo in the storage bucket
+     */
+    public static String getFullPath(Route route) {
+        return getPath(route.getFull(), route.getTitle());
+    }
+
+    /**
+     * Get the storage path of the thumbnail of a route.
+     * @param route The route
+     * @return The path of the thumbnail in the storage bucket
+     */
+    public static String getThumbnailPath(Route route) {
+        return getPath(route.getThumbnail(), route.getTitle());
+    }
+
+    /**
+     * Load a route's thumbnail into a tile of the dashboard grid. The photo is decoded no larger
+     * than the item_icon size, and without an alpha channel since route photos have no transparency.
+     * @param target The ImageView of the grid tile
+     * @param thumbnailPath The path of the thumbnail, from {@link #getThumbnailPath(Route)}
+     * @param holds The holds to draw over the photo, or null if there are none
+     * @param placeholder The placeholder, from {@link #decodePlaceholder(String)}, or null for none
+     */
+    public static void loadThumbnail(ImageView target, String thumbnailPath, @Nullable List<Hold> holds,
+                                     @Nullable Bitmap placeholder) {
+        Resources res = target.getResources();
+        request(target, thumbnailPath, holds)
+                .placeholder(toDrawable(res, placeholder))
+                .override(res.getDimensionPixelSize(R.dimen.route_thumbnail_width),
+                        res.getDimensionPixelSize(R.dimen.route_thumbnail_height))
+                .downsample(DownsampleStrategy.AT_MOST)
+                .format(DecodeFormat.PREFER_RGB_565)
+                .into(target);
+    }
+
+    /**
+     * Load a route's medium photo into the route details view, decoded to the width of the screen
+     * and the height of the photo strip.
+     * @param target The ImageView in the route details view
+     * @param route The route to show
+     */
+    public static void loadDetail(ImageView target, Route route) {
+        Resources res = target.getResources();
+        request(target, getMediumPath(route), route.getHolds())
+                .placeholder(toDrawable(res, decodePlaceholder(route.getPlaceholder())))
+                .override(res.getDisplayMetrics().widthPixels,
+                        res.getDimensionPixelSize(R.dimen.route_detail_photo_height))
+                .downsample(DownsampleStrategy.FIT_CENTER)
+                .into(target);
+    }
+
+    /**
+     * Load a full size route photo into the fullscreen viewer. The photo file is downloaded
+     * through Glide's disk cache and handed to the viewer undecoded, which decodes only the parts
+     * on screen. The medium photo, usually already cached by the route details view, is shown
+     * until the download finishes.
+     * @param target The fullscreen viewer
+     * @param photoPath The path of the photo in the storage bucket, from {@link #getFullPath(Route)}
+     * @param previewPath The path of a smaller copy to show while downloading, or null for none
+     * @param holds The holds to draw over the photo, or null if there are none
+     */
+    public static void loadFullscreen(TiledImageView target, String photoPath, @Nullable String previewPath,
+                                      @Nullable List<Hold> holds) {
+        target.setHolds(holds);
+        RequestManager requestManager = Glide.with(target);
+        if (previewPath != null && !previewPath.equals(photoPath)) {
+            DisplayMetrics metrics = target.getResources().getDisplayMetrics();
+            requestManager.asBitmap()
+                    .load(FirebaseUtil.getStorageRoot().child(previewPath))
+                    .diskCacheStrategy(DiskCacheStrategy.DATA)
+                    .override(metrics.widthPixels, metrics.heightPixels)
+                    .downsample(DownsampleStrategy.FIT_CENTER)
+                    .into(new CustomTarget<Bitmap>() {
+                        @Override
+                        public void onResourceReady(@NonNull Bitmap preview, @Nullable Transition<? super Bitmap> transition) {
+                            target.setPreview(preview);
+                        }
+
+                        @Override
+                        public void onLoadCleared(@Nullable Drawable placeholder) {
+                            target.setPreview(null);
+                        }
+                    });
+        }
+
+        requestManager.download(FirebaseUtil.getStorageRoot().child(photoPath))
+                .into(new CustomViewTarget<TiledImageView, File>(target) {
+                    @Override
+                    public void onResourceReady(@NonNull File photo, @Nullable Transition<? super File> transition) {
+                        view.setImage(photo);
+                    }
+
+                    @Override
+                    public void onLoadFailed(@Nullable Drawable errorDrawable) {
+                        Log.w(TAG, "Could not download " + photoPath);
+                    }
+
+                    @Override
+                    protected void onResourceCleared(@Nullable Drawable placeholder) {
+                        // The viewer keeps its own decoder open on the file
+                    }
+                });
+    }
+
+    /**
+     * Cancel any photo load into an ImageView and clear it, so a late result for a recycled
+     * view is dropped instead of being shown.
+     * @param target The ImageView to clear
+     */
+    public static void clear(ImageView target) {
+        Glide.with(target).clear(target);
+    }
+
+    /**
+     * Decode the placeholder stored on a route document, or get it from the cache if it was
+     * already decoded. The dashboard decodes its placeholders while mapping documents, so grid
+     * tiles never decode on the main thread, while the route details view decodes its single
+     * placeholder when it binds.
+     * @param placeholder The Base64 placeholder of the route, or null if it has none
+     * @return The placeholder, or null if there is none or it cannot be decoded
+     */
+    @Nullable
+    public static Bitmap decodePlaceholder(@Nullable String placeholder) {
+        if (placeholder == null || placeholder.isEmpty()) {
+            return null;
+        }
+
+        Bitmap bitmap = PLACEHOLDERS.get(placeholder);
+        if (bitmap == null) {
+            try {
+                byte[] bytes = Base64.decode(placeholder, Base64.NO_WRAP);
+                bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Invalid placeholder", e);
+            }
+            if (bitmap == null) {
+                return null;
+            }
+            PLACEHOLDERS.put(placeholder, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Wrap a placeholder in a drawable for a view.
+     * @param res Resources used to create the drawable
+     * @param placeholder The decoded placeholder, or null
+     * @return The drawable, or null if there is no placeholder
+     */
+    @Nullable
+    private static Drawable toDrawable(Resources res, @Nullable Bitmap placeholder) {
+        if (placeholder == null) {
+            return null;
+        }
+        // Filtering blurs the placeholder as it is scaled up to the size of the view
+        BitmapDrawable drawable = new BitmapDrawable(res, placeholder);
+        drawable.setFilterBitmap(true);
+        return drawable;
+    }
+
+    /**
+     * Build the request shared by every screen.
+     * @param target The ImageView the photo is loaded into
+     * @param photoPath The path of the photo in the storage bucket
+     * @param holds The holds to draw over the photo, or null if there are none
+     * @return A Glide request for the photo
+     */
+    private static RequestBuilder<Drawable> request(ImageView target, String photoPath, @Nullable List<Hold> holds) {
+        StorageReference reference = FirebaseUtil.getStorageRoot().child(photoPath);
+        RequestBuilder<Drawable> request = Glide.with(target)
+                .load(reference)
+                .diskCacheStrategy(DiskCacheStrategy.DATA) // Cache the downloaded file, decode per screen
+                .transition(DrawableTransitionOptions.withCrossFade());
+        if (holds != null && !holds.isEmpty()) {
+            request = request.transform(new HoldOverlayTransformation(new HoldOverlay(target.getContext()), holds));
+        }
+        return request;
+    }
+}
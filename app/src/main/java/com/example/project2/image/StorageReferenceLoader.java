@@ -0,0 +1,191 @@
+package com.example.project2.image;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.example.project2.util.AppExecutors;
+import com.google.firebase.storage.StorageReference;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Glide {@link ModelLoader} that downloads a {@link StorageReference} from Firebase Cloud Storage.
+ * The cache key is the object's path in the bucket, so Glide's memory and disk caches are shared
+ * by every screen that shows the same photo, and concurrent loads of the same object share one
+ * download through a {@link PhotoDownloadCoalescer}.
+ */
+public class StorageReferenceLoader implements ModelLoader<StorageReference, InputStream> {
+
+    private final PhotoDownloadCoalescer mCoalescer;
+
+    /**
+     * StorageReferenceLoader constructor that takes the coalescer shared by every load.
+     * @param coalescer Downloader that merges concurrent loads of the same object
+     */
+    public StorageReferenceLoader(PhotoDownloadCoalescer coalescer) {
+        mCoalescer = coalescer;
+    }
+
+    /**
+     * Builds the load for a reference.
+     * @param reference The Cloud Storage object to load
+     * @param width Target width requested by Glide
+     * @param height Target height requested by Glide
+     * @param options Options for the load
+     * @return The cache key and fetcher for the reference
+     */
+    @Nullable
+    @Override
+    public LoadData<InputStream> buildLoadData(@NonNull StorageReference reference, int width,
+                                               int height, @NonNull Options options) {
+        return new LoadData<>(new StorageKey(reference), new StorageFetcher(mCoalescer, reference));
+    }
+
+    /**
+     * Every StorageReference can be handled by this loader.
+     * @param reference The reference to check
+     * @return true
+     */
+    @Override
+    public boolean handles(@NonNull StorageReference reference) {
+        return true;
+    }
+
+    /**
+     * Factory registered with Glide in {@link RouteGlideModule}.
+     */
+    public static class Factory implements ModelLoaderFactory<StorageReference, InputStream> {
+
+        private final PhotoDownloadCoalescer mCoalescer;
+
+        /**
+         * Factory constructor that takes the folder for in-flight downloads.
+         * @param downloadDirectory Folder the coalescer writes downloads to
+         */
+        public Factory(File downloadDirectory) {
+            mCoalescer = new PhotoDownloadCoalescer(downloadDirectory, AppExecutors.getBackgroundExecutor());
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<StorageReference, InputStream> build(@NonNull MultiModelLoaderFactory factory) {
+            return new StorageReferenceLoader(mCoalescer);
+        }
+
+        @Override
+        public void teardown() {}
+    }
+
+    /**
+     * Cache key for a Cloud Storage object, based on its path in the bucket.
+     */
+    private static class StorageKey implements Key {
+
+        private final String mPath;
+
+        StorageKey(StorageReference reference) {
+            mPath = reference.getPath();
+        }
+
+        @Override
+        public void updateDiskCacheKey(@NonNull MessageDigest messageDigest) {
+            messageDigest.update(mPath.getBytes(CHARSET));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StorageKey && mPath.equals(((StorageKey) o).mPath);
+        }
+
+        @Override
+        public int hashCode() {
+            return mPath.hashCode();
+        }
+    }
+
+    /**
+     * Fetches the object through the coalescer, so loads of the same object share one download.
+     */
+    private static class StorageFetcher implements DataFetcher<InputStream>, PhotoDownloadCoalescer.Listener {
+
+        private final PhotoDownloadCoalescer mCoalescer;
+        private final StorageReference mReference;
+        private PhotoDownloadCoalescer.Request mRequest;
+        private DataCallback<? super InputStream> mCallback;
+        private InputStream mInputStream;
+        private volatile boolean mCancelled;
+
+        StorageFetcher(PhotoDownloadCoalescer coalescer, StorageReference reference) {
+            mCoalescer = coalescer;
+            mReference = reference;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority,
+                             @NonNull final DataCallback<? super InputStream> callback) {
+            mCallback = callback;
+            mRequest = mCoalescer.download(mReference, this);
+        }
+
+        @Override
+        public void onDownloaded(InputStream stream) {
+            mInputStream = stream;
+            if (mCancelled) {
+                // The view was recycled while downloading, drop the late result
+                cleanup();
+                return;
+            }
+            mCallback.onDataReady(mInputStream);
+        }
+
+        @Override
+        public void onFailed(Exception e) {
+            if (!mCancelled) {
+                mCallback.onLoadFailed(e);
+            }
+        }
+
+        @Override
+        public void cleanup() {
+            if (mInputStream != null) {
+                try {
+                    mInputStream.close();
+                } catch (IOException e) {
+                    // Nothing left to do with the stream
+                }
+                mInputStream = null;
+            }
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+            if (mRequest != null) {
+                mRequest.cancel();
+            }
+        }
+
+        @NonNull
+        @Override
+        public Class<InputStream> getDataClass() {
+            return InputStream.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.REMOTE;
+        }
+    }
+}
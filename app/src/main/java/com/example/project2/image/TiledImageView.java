@@ -0,0 +1,416 @@
+package com.example.project2.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.project2.model.Hold;
+import com.example.project2.util.AppExecutors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Pinch-zoomable view for a full size route photo. The whole photo is only ever decoded at the
+ * resolution of the screen. When the user zooms in, the visible part is decoded in tiles at the
+ * resolution the zoom level needs with a {@link BitmapRegionDecoder}, so the view opens quickly,
+ * sharpens as the user zooms in on a hold, and never needs a bitmap larger than the GPU allows.
+ *
+ * Decoded tiles are kept in a small LRU cache. The route's holds are drawn over the photo at the
+ * current zoom level.
+ */
+public class TiledImageView extends View {
+
+    private static final String TAG = "TiledImageView";
+
+    /**
+     * Size of a tile on screen in pixels, and the byte budget of the tile cache
+     */
+    private static final int TILE_SIZE = 512;
+    private static final int TILE_CACHE_BYTES = 24 * 1024 * 1024;
+
+    /**
+     * How far the user can zoom in, relative to a pixel of the photo filling a pixel of the screen
+     */
+    private static final float MAX_ZOOM = 4f;
+    private static final float DOUBLE_TAP_ZOOM = 2.5f;
+
+    private final Executor mExecutor = AppExecutors.getBackgroundExecutor();
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final HoldOverlay mOverlay;
+    private final ScaleGestureDetector mScaleDetector;
+    private final GestureDetector mGestureDetector;
+
+    private final LruCache<String, Bitmap> mTiles = new LruCache<String, Bitmap>(TILE_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap tile) {
+            return tile.getByteCount();
+        }
+    };
+    private final Set<String> mPendingTiles = new HashSet<>();
+
+    private final RectF mImageBounds = new RectF();
+    private final Rect mTileRegion = new Rect();
+    private final RectF mTileBounds = new RectF();
+
+    @Nullable
+    private BitmapRegionDecoder mDecoder;
+    @Nullable
+    private Bitmap mBase;         // Whole photo decoded at about the resolution of the screen
+    @Nullable
+    private Bitmap mPreview;      // Smaller photo shown until the full size photo is ready
+    @Nullable
+    private List<Hold> mHolds;
+    private int mBaseSampleSize;
+    private int mImageWidth;
+    private int mImageHeight;
+
+    /**
+     * Current zoom, in screen pixels per photo pixel, and the position of the photo's top left
+     * corner on screen
+     */
+    private float mScale;
+    private float mMinScale;
+    private float mMaxScale;
+    private float mTranslateX;
+    private float mTranslateY;
+
+    /**
+     * Incremented whenever the photo changes, so tiles decoded for an older photo are dropped
+     */
+    private int mGeneration;
+
+    public TiledImageView(Context context) {
+        this(context, null);
+    }
+
+    public TiledImageView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        mOverlay = new HoldOverlay(context);
+        mScaleDetector = new ScaleGestureDetector(context, new ScaleListener());
+        mGestureDetector = new GestureDetector(context, new PanListener());
+    }
+
+    /**
+     * Set the holds to draw over the photo.
+     * @param holds The holds, or null if there are none
+     */
+    public void setHolds(@Nullable List<Hold> holds) {
+        mHolds = holds;
+        invalidate();
+    }
+
+    /**
+     * Show a smaller copy of the photo until the full size photo has been opened.
+     * @param preview The smaller copy, with the same aspect ratio as the photo, or null to remove it
+     */
+    public void setPreview(@Nullable Bitmap preview) {
+        mPreview = preview;
+        if (mDecoder == null) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Open a full size photo. The photo is decoded at the resolution of the screen in the
+     * background, and shown once it is ready.
+     * @param file The photo file
+     */
+    public void setImage(File file) {
+        releaseDecoder();
+        int generation = ++mGeneration;
+        int screenWidth = getResources().getDisplayMetrics().widthPixels;
+        int screenHeight = getResources().getDisplayMetrics().heightPixels;
+        mExecutor.execute(() -> {
+            BitmapRegionDecoder decoder;
+            try {
+                decoder = newDecoder(file);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not open photo " + file, e);
+                return;
+            }
+
+            // Decode the whole photo subsampled to about the size of the screen as the base layer
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            float fitScale = Math.min((float) screenWidth / width, (float) screenHeight / height);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = getSampleSize(fitScale);
+            Bitmap base = BitmapFactory.decodeFile(file.getPath(), options);
+            int baseSampleSize = options.inSampleSize;
+
+            post(() -> {
+                if (generation != mGeneration || base == null) {
+                    mExecutor.execute(decoder::recycle);
+                    return;
+                }
+                mDecoder = decoder;
+                mBase = base;
+                mBaseSampleSize = baseSampleSize;
+                mImageWidth = width;
+                mImageHeight = height;
+                mPreview = null;
+                resetZoom();
+            });
+        });
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        resetZoom();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mGeneration++;
+        releaseDecoder();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mBase == null) {
+            drawPreview(canvas);
+            return;
+        }
+
+        mImageBounds.set(mTranslateX, mTranslateY,
+                mTranslateX + mImageWidth * mScale, mTranslateY + mImageHeight * mScale);
+        canvas.drawBitmap(mBase, null, mImageBounds, mPaint);
+
+        // Only decode tiles once the zoom needs more detail than the base layer has
+        int sampleSize = getSampleSize(mScale);
+        if (sampleSize < mBaseSampleSize) {
+            drawTiles(canvas, sampleSize);
+        }
+        mOverlay.draw(canvas, mHolds, mImageBounds);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mBase == null) {
+            return false;
+        }
+        boolean handled = mScaleDetector.onTouchEvent(event);
+        handled |= mGestureDetector.onTouchEvent(event);
+        if (event.getActionMasked() == MotionEvent.ACTION_UP) {
+            performClick();
+        }
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    /**
+     * Draw the preview centered and scaled to fit, with the holds over it.
+     */
+    private void drawPreview(Canvas canvas) {
+        if (mPreview == null || getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        float scale = Math.min((float) getWidth() / mPreview.getWidth(), (float) getHeight() / mPreview.getHeight());
+        float width = mPreview.getWidth() * scale;
+        float height = mPreview.getHeight() * scale;
+        mImageBounds.set((getWidth() - width) / 2, (getHeight() - height) / 2,
+                (getWidth() + width) / 2, (getHeight() + height) / 2);
+        canvas.drawBitmap(mPreview, null, mImageBounds, mPaint);
+        mOverlay.draw(canvas, mHolds, mImageBounds);
+    }
+
+    /**
+     * Draw the tiles covering the visible part of the photo, requesting any that are not decoded yet.
+     * @param sampleSize The subsampling the tiles are decoded with at the current zoom
+     */
+    private void drawTiles(Canvas canvas, int sampleSize) {
+        int tileImageSize = TILE_SIZE * sampleSize;
+        int left = (int) Math.max(0, -mTranslateX / mScale);
+        int top = (int) Math.max(0, -mTranslateY / mScale);
+        int right = (int) Math.min(mImageWidth, (getWidth() - mTranslateX) / mScale);
+        int bottom = (int) Math.min(mImageHeight, (getHeight() - mTranslateY) / mScale);
+
+        for (int row = top / tileImageSize; row * tileImageSize < bottom; row++) {
+            for (int col = left / tileImageSize; col * tileImageSize < right; col++) {
+                mTileRegion.set(col * tileImageSize, row * tileImageSize,
+                        Math.min(mImageWidth, (col + 1) * tileImageSize),
+                        Math.min(mImageHeight, (row + 1) * tileImageSize));
+                String key = sampleSize + "/" + col + "/" + row;
+                Bitmap tile = mTiles.get(key);
+                if (tile == null) {
+                    requestTile(key, new Rect(mTileRegion), sampleSize);
+                    continue;
+                }
+                mTileBounds.set(mTranslateX + mTileRegion.left * mScale, mTranslateY + mTileRegion.top * mScale,
+                        mTranslateX + mTileRegion.right * mScale, mTranslateY + mTileRegion.bottom * mScale);
+                canvas.drawBitmap(tile, null, mTileBounds, mPaint);
+            }
+        }
+    }
+
+    /**
+     * Decode a tile in the background and redraw once it is ready.
+     */
+    private void requestTile(String key, Rect region, int sampleSize) {
+        BitmapRegionDecoder decoder = mDecoder;
+        if (decoder == null || !mPendingTiles.add(key)) {
+            return;
+        }
+
+        int generation = mGeneration;
+        mExecutor.execute(() -> {
+            Bitmap tile = null;
+            try {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = sampleSize;
+                tile = decoder.decodeRegion(region, options);
+            } catch (IllegalStateException e) {
+                // The decoder was released because the view went away
+            }
+            Bitmap decodedTile = tile;
+            post(() -> {
+                if (generation != mGeneration) {
+                    return;
+                }
+                mPendingTiles.remove(key);
+                if (decodedTile != null) {
+                    mTiles.put(key, decodedTile);
+                    invalidate();
+                }
+            });
+        });
+    }
+
+    /**
+     * Zoom out to fit the whole photo in the view.
+     */
+    private void resetZoom() {
+        if (mBase == null || getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        mMinScale = Math.min((float) getWidth() / mImageWidth, (float) getHeight() / mImageHeight);
+        mMaxScale = Math.max(mMinScale, MAX_ZOOM);
+        mScale = mMinScale;
+        clampTranslation();
+        invalidate();
+    }
+
+    /**
+     * Zoom to a scale, keeping the photo pixel under the focus point in place.
+     */
+    private void zoomTo(float scale, float focusX, float focusY) {
+        float newScale = Math.max(mMinScale, Math.min(mMaxScale, scale));
+        mTranslateX = focusX - (focusX - mTranslateX) * newScale / mScale;
+        mTranslateY = focusY - (focusY - mTranslateY) * newScale / mScale;
+        mScale = newScale;
+        clampTranslation();
+        invalidate();
+    }
+
+    /**
+     * Keep the photo centered when it is smaller than the view, and its edges inside the view when it is larger.
+     */
+    private void clampTranslation() {
+        float width = mImageWidth * mScale;
+        float height = mImageHeight * mScale;
+        mTranslateX = width <= getWidth()
+                ? (getWidth() - width) / 2
+                : Math.max(getWidth() - width, Math.min(0, mTranslateX));
+        mTranslateY = height <= getHeight()
+                ? (getHeight() - height) / 2
+                : Math.max(getHeight() - height, Math.min(0, mTranslateY));
+    }
+
+    /**
+     * Get the largest power of two subsampling that still has at least one photo pixel per screen pixel.
+     * @param scale Screen pixels per photo pixel
+     */
+    private static int getSampleSize(float scale) {
+        int sampleSize = 1;
+        while (sampleSize * 2 <= 1 / scale) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder newDecoder(File file) throws IOException {
+        return BitmapRegionDecoder.newInstance(file.getPath(), false);
+    }
+
+    /**
+     * Drop the decoded photo and tiles, and release the decoder in the background since it may still be decoding.
+     */
+    private void releaseDecoder() {
+        BitmapRegionDecoder decoder = mDecoder;
+        if (decoder != null) {
+            mExecutor.execute(decoder::recycle);
+        }
+        mDecoder = null;
+        mBase = null;
+        mTiles.evictAll();
+        mPendingTiles.clear();
+    }
+
+    /**
+     * Zooms with a pinch around the pinch's focus point.
+     */
+    private class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
+        @Override
+        public boolean onScale(@NonNull ScaleGestureDetector detector) {
+            zoomTo(mScale * detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+            return true;
+        }
+    }
+
+    /**
+     * Pans with a drag, and zooms in on a double tap or back out if already zoomed in.
+     */
+    private class PanListener extends GestureDetector.SimpleOnGestureListener {
+        @Override
+        public boolean onDown(@NonNull MotionEvent e) {
+            return true;
+        }
+
+        @Override
+        public boolean onScroll(@Nullable MotionEvent e1, @NonNull MotionEvent e2, float distanceX, float distanceY) {
+            mTranslateX -= distanceX;
+            mTranslateY -= distanceY;
+            clampTranslation();
+            invalidate();
+            return true;
+        }
+
+        @Override
+        public boolean onDoubleTap(@NonNull MotionEvent e) {
+            if (mScale > mMinScale) {
+                resetZoom();
+            } else {
+                zoomTo(mMinScale * DOUBLE_TAP_ZOOM, e.getX(), e.getY());
+            }
+            return true;
+        }
+    }
+}
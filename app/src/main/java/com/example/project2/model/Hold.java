@@ -0,0 +1,108 @@
+package com.example.project2.model;
+
+import java.io.Serializable;
+
+/**
+ * Model POJO for a hold marked on a route's photo. Holds are stored on the route document and
+ * drawn over the photo when it is shown, so the uploaded photo itself stays unannotated.
+ */
+public class Hold implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The limbs a hold can be marked for
+     */
+    public static final String LIMB_LEFT_HAND = "left_hand";
+    public static final String LIMB_RIGHT_HAND = "right_hand";
+    public static final String LIMB_LEFT_FOOT = "left_foot";
+    public static final String LIMB_RIGHT_FOOT = "right_foot";
+
+    private String limb;
+    private double x;     // Center of the hold as a fraction of the photo width, from 0 to 1
+    private double y;     // Center of the hold as a fraction of the photo height, from 0 to 1
+    private int order;    // Position of the hold in the sequence the holds were placed
+
+    /**
+     * Default constructor for Hold
+     */
+    public Hold() {}
+
+    /**
+     * Constructor for Hold that takes a limb, a position on the photo and an order
+     * @param limb The limb the hold is for, one of the LIMB constants
+     * @param x The center of the hold as a fraction of the photo width
+     * @param y The center of the hold as a fraction of the photo height
+     * @param order The position of the hold in the sequence
+     */
+    public Hold(String limb, double x, double y, int order) {
+        this.limb = limb;
+        this.x = x;
+        this.y = y;
+        this.order = order;
+    }
+
+    /**
+     * Get the limb the hold is for
+     * @return One of the LIMB constants
+     */
+    public String getLimb() {
+        return limb;
+    }
+
+    /**
+     * Set the limb the hold is for
+     * @param limb One of the LIMB constants
+     */
+    public void setLimb(String limb) {
+        this.limb = limb;
+    }
+
+    /**
+     * Get the horizontal center of the hold
+     * @return The center as a fraction of the photo width
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Set the horizontal center of the hold
+     * @param x The center as a fraction of the photo width
+     */
+    public void setX(double x) {
+        this.x = x;
+    }
+
+    /**
+     * Get the vertical center of the hold
+     * @return The center as a fraction of the photo height
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Set the vertical center of the hold
+     * @param y The center as a fraction of the photo height
+     */
+    public void setY(double y) {
+        this.y = y;
+    }
+
+    /**
+     * Get the position of the hold in the sequence the holds were placed
+     * @return The order, starting from 0
+     */
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Set the position of the hold in the sequence the holds were placed
+     * @param order The order, starting from 0
+     */
+    public void setOrder(int order) {
+        this.order = order;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.project2.model;
+
+import java.io.Serializable;
+
+/**
+ * Model POJO for one size of a route's photo stored in Firebase Cloud Storage.
+ */
+public class PhotoRendition implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String path;
+    private int width;
+    private int height;
+
+    /**
+     * Parameters the image was encoded with, recorded so the bytes per photo can be monitored.
+     * Unset for photos uploaded before adaptive encoding.
+     */
+    private String contentType;
+    private int quality;
+    private long byteSize;
+
+    /**
+     * Default constructor for PhotoRendition
+     */
+    public PhotoRendition() {}
+
+    /**
+     * Constructor for PhotoRendition that takes a storage path and the image size
+     * @param path The path of the image in the storage bucket
+     * @param width The width of the image in pixels
+     * @param height The height of the image in pixels
+     */
+    public PhotoRendition(String path, int width, int height) {
+        this.path = path;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Get the path of the image in the storage bucket
+     * @return A string that consists of the storage path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Set the path of the image in the storage bucket
+     * @param path A string that consists of the storage path
+     */
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Get the width of the image
+     * @return The width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Set the width of the image
+     * @param width The width in pixels
+     */
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    /**
+     * Get the height of the image
+     * @return The height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Set the height of the image
+     * @param height The height in pixels
+     */
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    /**
+     * Get the MIME type the image was encoded as
+     * @return The content type, or null if it was not recorded
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Set the MIME type the image was encoded as
+     * @param contentType The content type
+     */
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Get the quality the image was encoded with
+     * @return The quality from 0 to 100, or 0 if it was not recorded
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * Set the quality the image was encoded with
+     * @param quality The quality from 0 to 100
+     */
+    public void setQuality(int quality) {
+        this.quality = quality;
+    }
+
+    /**
+     * Get the size of the encoded image
+     * @return The size in bytes, or 0 if it was not recorded
+     */
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * Set the size of the encoded image
+     * @param byteSize The size in bytes
+     */
+    public void setByteSize(long byteSize) {
+        this.byteSize = byteSize;
+    }
+}
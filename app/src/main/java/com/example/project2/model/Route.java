@@ -6,13 +6,16 @@ import android.util.Base64;
 
 import com.google.firebase.firestore.IgnoreExtraProperties;
 
+import java.io.Serializable;
 import java.util.List;
 
 /**
  * Route POJO.
  */
 @IgnoreExtraProperties
-public class Route {
+public class Route implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * String variables for the Route object consisting of different text fields
@@ -26,6 +29,11 @@ public class Route {
     public static final String FIELD_DIFFICULTY_ORDER = "difficultyOrder";
     public static final String FIELD_SLOPE_ORDER = "slopeOrder";
     public static final String FIELD_DESCRIPTION = "description"; // New constant
+    public static final String FIELD_THUMBNAIL = "thumbnail";
+    public static final String FIELD_MEDIUM = "medium";
+    public static final String FIELD_FULL = "full";
+    public static final String FIELD_HOLDS = "holds";
+    public static final String FIELD_PLACEHOLDER = "placeholder";
 
     /**
      * Private variables for the Route object consisting of different fields to describe a route
@@ -39,6 +47,11 @@ public class Route {
     private double avgRating;
     private int difficultyOrder; // Used for sorting routes by their difficulty
     private int slopeOrder;      // Used for sorting routes by their slope
+    private PhotoRendition thumbnail; // Small photo for the dashboard grid
+    private PhotoRendition medium;    // Photo sized for the route details view
+    private PhotoRendition full;      // Full size photo for the fullscreen viewer
+    private List<Hold> holds;         // Holds drawn over the photo when it is shown
+    private String placeholder;       // Tiny Base64 encoded preview shown while the photo downloads
 
     /**
      * Default constructor for Route
@@ -126,6 +139,86 @@ public class Route {
         this.photo = photo;
     }
 
+    /**
+     * Get the small photo shown in the dashboard grid
+     * @return The thumbnail rendition, or null for routes created before renditions existed
+     */
+    public PhotoRendition getThumbnail() {
+        return thumbnail;
+    }
+
+    /**
+     * Set the small photo shown in the dashboard grid
+     * @param thumbnail The thumbnail rendition
+     */
+    public void setThumbnail(PhotoRendition thumbnail) {
+        this.thumbnail = thumbnail;
+    }
+
+    /**
+     * Get the photo shown in the route details view
+     * @return The medium rendition, or null for routes created before renditions existed
+     */
+    public PhotoRendition getMedium() {
+        return medium;
+    }
+
+    /**
+     * Set the photo shown in the route details view
+     * @param medium The medium rendition
+     */
+    public void setMedium(PhotoRendition medium) {
+        this.medium = medium;
+    }
+
+    /**
+     * Get the full size photo shown in the fullscreen viewer
+     * @return The full rendition, or null for routes created before renditions existed
+     */
+    public PhotoRendition getFull() {
+        return full;
+    }
+
+    /**
+     * Set the full size photo shown in the fullscreen viewer
+     * @param full The full rendition
+     */
+    public void setFull(PhotoRendition full) {
+        this.full = full;
+    }
+
+    /**
+     * Get the holds marked on the route's photo
+     * @return A list of holds, or null for routes created before holds were stored separately
+     */
+    public List<Hold> getHolds() {
+        return holds;
+    }
+
+    /**
+     * Set the holds marked on the route's photo
+     * @param holds A list of holds
+     */
+    public void setHolds(List<Hold> holds) {
+        this.holds = holds;
+    }
+
+    /**
+     * Get the tiny preview of the route's photo, shown until the photo itself has downloaded
+     * @return A Base64 encoded image, or null for routes created before placeholders existed
+     */
+    public String getPlaceholder() {
+        return placeholder;
+    }
+
+    /**
+     * Set the tiny preview of the route's photo
+     * @param placeholder A Base64 encoded image
+     */
+    public void setPlaceholder(String placeholder) {
+        this.placeholder = placeholder;
+    }
+
     /**
      * Get a route's slope
      * @return A string that consists of a route's slope
@@ -0,0 +1,291 @@
+package com.example.project2.upload;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.project2.util.AppExecutors;
+import com.example.project2.util.FirebaseUtil;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.storage.StorageException;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+import com.google.firebase.storage.UploadTask;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Uploads files to Firebase Cloud Storage so that they survive leaving the screen and process
+ * death. Each upload is staged to a file in app storage and recorded, together with its upload
+ * session URI once Cloud Storage has assigned one. Uploads that were interrupted are resumed with
+ * {@link StorageReference#putFile(Uri, StorageMetadata, Uri)}, which continues the session from
+ * the last chunk the server received instead of re-sending the whole file.
+ *
+ * Uploads are only started by RouteUploadWorker, whose unique chain runs while the device is
+ * online and retries with backoff, so an interrupted upload is resumed by the worker's next run
+ * and never twice at once. Before each job the worker discards the staged uploads that no
+ * journaled job refers to, so files and sessions left by dropped jobs do not pile up.
+ */
+public class ResumableUploadManager {
+
+    private static final String TAG = "ResumableUploadManager";
+
+    /**
+     * Names of the preferences file and folder the staged uploads are kept in
+     */
+    private static final String PREFS_NAME = "resumable_uploads";
+    private static final String STAGING_DIR = "staged_uploads";
+
+    /**
+     * Preference keys. Each upload is stored under its ID followed by one of the suffixes.
+     */
+    private static final String KEY_UPLOAD_IDS = "upload_ids";
+    private static final String SUFFIX_PATH = ".path";
+    private static final String SUFFIX_CONTENT_TYPE = ".content_type";
+    private static final String SUFFIX_CACHE_CONTROL = ".cache_control";
+    private static final String SUFFIX_SESSION = ".session";
+
+    private static ResumableUploadManager INSTANCE;
+
+    private final SharedPreferences mPrefs;
+    private final File mStagingDir;
+    private final Executor mExecutor = AppExecutors.getBackgroundExecutor();
+
+    /**
+     * Uploads running in this process, keyed by upload ID
+     */
+    private final Map<String, UploadTask> mRunning = new HashMap<>();
+
+    private ResumableUploadManager(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mStagingDir = new File(context.getFilesDir(), STAGING_DIR);
+    }
+
+    /**
+     * Get the upload manager
+     * @param context Any context, only the application context is kept
+     * @return The process-wide upload manager
+     */
+    public static synchronized ResumableUploadManager getInstance(Context context) {
+        if (INSTANCE == null) {
+            INSTANCE = new ResumableUploadManager(context.getApplicationContext());
+        }
+
+        return INSTANCE;
+    }
+
+    /**
+     * Write the bytes of an upload to a staged file and record the upload, so it can be resumed
+     * after process death. Writes to disk, so it must be called off the main thread.
+     * @param storagePath The path in the storage bucket to upload to
+     * @param bytes The bytes to upload
+     * @param contentType The MIME type of the bytes
+     * @param cacheControl The Cache-Control header to store with the object, or null for none
+     * @return The ID of the staged upload, to pass to {@link #start(String)}
+     * @throws IOException If the staged file could not be written
+     */
+    @WorkerThread
+    public String stage(String storagePath, byte[] bytes, String contentType, @Nullable String cacheControl)
+            throws IOException {
+        String uploadId = UUID.randomUUID().toString();
+        if (!mStagingDir.exists()) {
+            mStagingDir.mkdirs();
+        }
+        try (FileOutputStream outputStream = new FileOutputStream(getStagedFile(uploadId))) {
+            outputStream.write(bytes);
+        }
+
+        synchronized (this) {
+            Set<String> uploadIds = new HashSet<>(mPrefs.getStringSet(KEY_UPLOAD_IDS, new HashSet<>()));
+            uploadIds.add(uploadId);
+            mPrefs.edit()
+                    .putString(uploadId + SUFFIX_PATH, storagePath)
+                    .putString(uploadId + SUFFIX_CONTENT_TYPE, contentType)
+                    .putString(uploadId + SUFFIX_CACHE_CONTROL, cacheControl)
+                    .putStringSet(KEY_UPLOAD_IDS, uploadIds)
+                    .commit();
+        }
+        return uploadId;
+    }
+
+    /**
+     * Start a staged upload, or resume it from its saved upload session. Progress, completion
+     * and failure can be followed through the returned task.
+     * @param uploadId The ID returned by {@link #stage(String, byte[], String, String)}
+     * @return The running upload, or null if the upload is unknown (it already finished)
+     */
+    @Nullable
+    public synchronized UploadTask start(String uploadId) {
+        UploadTask running = mRunning.get(uploadId);
+        if (running != null) {
+            return running;
+        }
+
+        String storagePath = mPrefs.getString(uploadId + SUFFIX_PATH, null);
+        File stagedFile = getStagedFile(uploadId);
+        if (storagePath == null || !stagedFile.exists()) {
+            forget(uploadId);
+            return null;
+        }
+
+        StorageReference reference = FirebaseUtil.getStorageRoot().child(storagePath);
+        StorageMetadata metadata = new StorageMetadata.Builder()
+                .setContentType(mPrefs.getString(uploadId + SUFFIX_CONTENT_TYPE, null))
+                .setCacheControl(mPrefs.getString(uploadId + SUFFIX_CACHE_CONTROL, null))
+                .build();
+        String session = mPrefs.getString(uploadId + SUFFIX_SESSION, null);
+        Uri sessionUri = session != null ? Uri.parse(session) : null;
+        if (sessionUri != null) {
+            Log.d(TAG, "Resuming upload of " + storagePath);
+        }
+
+        UploadTask task = reference.putFile(Uri.fromFile(stagedFile), metadata, sessionUri);
+        mRunning.put(uploadId, task);
+        AtomicBoolean sessionSaved = new AtomicBoolean(false);
+        task.addOnProgressListener(mExecutor, snapshot -> {
+            // Save the session once, as soon as Cloud Storage assigns one, so a restart can resume it
+            Uri uploadSessionUri = snapshot.getUploadSessionUri();
+            if (uploadSessionUri != null && !uploadSessionUri.equals(sessionUri)
+                    && sessionSaved.compareAndSet(false, true)) {
+                saveSession(uploadId, uploadSessionUri);
+            }
+            Log.d(TAG, "Uploaded " + snapshot.getBytesTransferred() + "/" + snapshot.getTotalByteCount()
+                    + " bytes of " + storagePath);
+        }).addOnSuccessListener(mExecutor, snapshot -> {
+            Log.d(TAG, "Finished upload of " + storagePath);
+            forget(uploadId);
+        }).addOnFailureListener(mExecutor, e -> {
+            Log.w(TAG, "Upload of " + storagePath + " failed", e);
+            onUploadFailed(uploadId, e);
+        });
+        return task;
+    }
+
+    /**
+     * Delete every staged upload that is not referenced, such as the uploads of a job that was
+     * dropped, or killed before it recorded them. Must not run while a job may be staging uploads.
+     * @param referencedIds The IDs of the uploads journaled jobs still refer to
+     */
+    @WorkerThread
+    public synchronized void discardUnreferenced(Set<String> referencedIds) {
+        Set<String> uploadIds = new HashSet<>(mPrefs.getStringSet(KEY_UPLOAD_IDS, new HashSet<>()));
+        String[] stagedFiles = mStagingDir.list();
+        if (stagedFiles != null) {
+            // Also covers files written just before the process was killed, but never recorded
+            uploadIds.addAll(Arrays.asList(stagedFiles));
+        }
+        for (String uploadId : uploadIds) {
+            if (!referencedIds.contains(uploadId) && !mRunning.containsKey(uploadId)) {
+                Log.d(TAG, "Discarding unreferenced upload " + uploadId);
+                forget(uploadId);
+            }
+        }
+    }
+
+    /**
+     * Drop a staged upload if an object already exists at its path. Only safe for content-addressed
+     * paths, where an existing object is known to hold the same bytes. Waits for Cloud Storage, so
+     * it must be called off the main thread.
+     * @param uploadId The ID of the staged upload
+     * @return true if the object is already stored and the upload was dropped
+     */
+    @WorkerThread
+    public boolean discardIfStored(String uploadId) {
+        String storagePath;
+        synchronized (this) {
+            storagePath = mPrefs.getString(uploadId + SUFFIX_PATH, null);
+            if (storagePath == null || mRunning.containsKey(uploadId)) {
+                return false;
+            }
+        }
+
+        try {
+            Tasks.await(FirebaseUtil.getStorageRoot().child(storagePath).getMetadata());
+        } catch (ExecutionException e) {
+            // Not stored yet, or it could not be checked, so upload it
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        Log.d(TAG, storagePath + " is already stored, skipping upload");
+        synchronized (this) {
+            if (mRunning.containsKey(uploadId)) {
+                return false;
+            }
+            forget(uploadId);
+        }
+        return true;
+    }
+
+    /**
+     * Keep the upload staged so it can be retried. A session that the server no longer accepts is
+     * dropped so the next attempt starts a new one, while network failures keep the session.
+     * @param uploadId The ID of the failed upload
+     * @param e The reason the upload failed
+     */
+    private synchronized void onUploadFailed(String uploadId, Exception e) {
+        mRunning.remove(uploadId);
+        boolean retryable = e instanceof StorageException
+                && (((StorageException) e).getErrorCode() == StorageException.ERROR_RETRY_LIMIT_EXCEEDED
+                || ((StorageException) e).getErrorCode() == StorageException.ERROR_CANCELED);
+        if (!retryable) {
+            mPrefs.edit().remove(uploadId + SUFFIX_SESSION).apply();
+        }
+    }
+
+    /**
+     * Save the upload session of an upload.
+     * @param uploadId The ID of the upload
+     * @param sessionUri The upload session URI assigned by Cloud Storage
+     */
+    private synchronized void saveSession(String uploadId, Uri sessionUri) {
+        if (mPrefs.getString(uploadId + SUFFIX_PATH, null) != null) {
+            mPrefs.edit().putString(uploadId + SUFFIX_SESSION, sessionUri.toString()).apply();
+        }
+    }
+
+    /**
+     * Delete the staged file and record of an upload.
+     * @param uploadId The ID of the upload
+     */
+    private synchronized void forget(String uploadId) {
+        mRunning.remove(uploadId);
+        getStagedFile(uploadId).delete();
+
+        Set<String> uploadIds = new HashSet<>(mPrefs.getStringSet(KEY_UPLOAD_IDS, new HashSet<>()));
+        uploadIds.remove(uploadId);
+        mPrefs.edit()
+                .remove(uploadId + SUFFIX_PATH)
+                .remove(uploadId + SUFFIX_CONTENT_TYPE)
+                .remove(uploadId + SUFFIX_CACHE_CONTROL)
+                .remove(uploadId + SUFFIX_SESSION)
+                .putStringSet(KEY_UPLOAD_IDS, uploadIds)
+                .apply();
+    }
+
+    /**
+     * Get the staged file of an upload.
+     * @param uploadId The ID of the upload
+     * @return The file holding the bytes to upload
+     */
+    private File getStagedFile(String uploadId) {
+        return new File(mStagingDir, uploadId);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.project2.upload;
+
+import com.example.project2.model.Route;
+
+import androidx.annotation.Nullable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A route waiting in the {@link RouteUploadQueue}: the route document, the collections it is
+ * saved to, and its photo. The photo starts out as the Uri of the edited photo, and is replaced by
+ * the staged uploads of its renditions once {@link RouteUploadWorker} has encoded them.
+ */
+public class RouteUploadJob implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String id;
+    private final Route route;
+    private final ArrayList<String> collections;
+    @Nullable
+    private String photoUri;
+    private ArrayList<String> uploadIds;
+
+    /**
+     * Constructor for RouteUploadJob
+     * @param id ID of the job, also used as the ID of the route document so a replay never saves it twice
+     * @param route The route to save
+     * @param collections The collections to save the route to
+     * @param photoUri Uri of the edited photo, still to be encoded
+     */
+    public RouteUploadJob(String id, Route route, List<String> collections, String photoUri) {
+        this.id = id;
+        this.route = route;
+        this.collections = new ArrayList<>(collections);
+        this.photoUri = photoUri;
+        this.uploadIds = new ArrayList<>();
+    }
+
+    /**
+     * Get the ID of the job
+     * @return The job ID, also the ID of the route document
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Get the route to save
+     * @return The route
+     */
+    public Route getRoute() {
+        return route;
+    }
+
+    /**
+     * Get the collections the route is saved to
+     * @return A list of collection names
+     */
+    public List<String> getCollections() {
+        return collections;
+    }
+
+    /**
+     * Get the Uri of the edited photo, if its renditions have not been encoded yet
+     * @return The photo Uri, or null once the renditions are staged
+     */
+    @Nullable
+    public String getPhotoUri() {
+        return photoUri;
+    }
+
+    /**
+     * Get the staged photo uploads that must finish before the route is saved
+     * @return A list of upload IDs
+     */
+    public List<String> getUploadIds() {
+        return uploadIds;
+    }
+
+    /**
+     * Record the staged uploads of the encoded renditions, replacing the edited photo
+     * @param uploadIds IDs of the staged photo uploads in the {@link ResumableUploadManager}
+     */
+    public void setUploadIds(List<String> uploadIds) {
+        this.uploadIds = new ArrayList<>(uploadIds);
+        this.photoUri = null;
+    }
+}
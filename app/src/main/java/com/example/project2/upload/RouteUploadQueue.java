@@ -0,0 +1,186 @@
+package com.example.project2.upload;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.project2.model.Route;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Durable queue of routes waiting to be uploaded. Each route is journaled to a file in app storage
+ * and replayed in order by {@link RouteUploadWorker} once the device is online, so creating a
+ * route is accepted instantly even with no signal and survives the app being killed.
+ */
+public class RouteUploadQueue {
+
+    private static final String TAG = "RouteUploadQueue";
+
+    /**
+     * Folder in app storage that holds the journaled routes
+     */
+    private static final String JOURNAL_DIR = "route_jobs";
+    private static final String JOB_EXTENSION = ".job";
+
+    private static RouteUploadQueue INSTANCE;
+
+    private final Context mContext;
+    private final File mJournalDir;
+
+    private RouteUploadQueue(Context context) {
+        mContext = context;
+        mJournalDir = new File(context.getFilesDir(), JOURNAL_DIR);
+    }
+
+    /**
+     * Get the route upload queue
+     * @param context Any context, only the application context is kept
+     * @return The process-wide route upload queue
+     */
+    public static synchronized RouteUploadQueue getInstance(Context context) {
+        if (INSTANCE == null) {
+            INSTANCE = new RouteUploadQueue(context.getApplicationContext());
+        }
+
+        return INSTANCE;
+    }
+
+    /**
+     * Journal a route and schedule its photo to be encoded and uploaded, and the route to be saved
+     * after it. Only writes the small journal file, so the route is accepted straight away, but it
+     * must still be called off the main thread.
+     * @param route The route to save
+     * @param collections The collections to save the route to
+     * @param photoUri Uri of the edited photo
+     * @throws IOException If the route could not be journaled
+     */
+    @WorkerThread
+    public void enqueue(Route route, List<String> collections, String photoUri) throws IOException {
+        RouteUploadJob job = new RouteUploadJob(UUID.randomUUID().toString(), route, collections, photoUri);
+        save(job);
+        RouteUploadWorker.enqueue(mContext, job.getId());
+    }
+
+    /**
+     * Write a job to the journal, replacing any earlier version of it.
+     * @param job The job
+     * @throws IOException If the job could not be written
+     */
+    @WorkerThread
+    void save(RouteUploadJob job) throws IOException {
+        if (!mJournalDir.exists()) {
+            mJournalDir.mkdirs();
+        }
+
+        // Write to a temporary file first so a crash never leaves a half written job behind
+        File tempFile = new File(mJournalDir, job.getId() + ".tmp");
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream(tempFile))) {
+            outputStream.writeObject(job);
+        }
+        if (!tempFile.renameTo(getJobFile(job.getId()))) {
+            tempFile.delete();
+            throw new IOException("Could not journal route " + job.getRoute().getTitle());
+        }
+    }
+
+    /**
+     * Read a journaled route.
+     * @param jobId The ID of the job
+     * @return The job, or null if it has already been saved or cannot be read
+     */
+    @WorkerThread
+    @Nullable
+    public RouteUploadJob load(String jobId) {
+        File jobFile = getJobFile(jobId);
+        if (!jobFile.exists()) {
+            return null;
+        }
+        try (ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream(jobFile))) {
+            return (RouteUploadJob) inputStream.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            Log.e(TAG, "Could not read journaled route " + jobId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Get the IDs of every journaled route that has not been saved yet.
+     * @return The job IDs, in no particular order
+     */
+    @WorkerThread
+    public List<String> getJobIds() {
+        List<String> jobIds = new ArrayList<>();
+        File[] jobFiles = mJournalDir.listFiles((dir, name) -> name.endsWith(JOB_EXTENSION));
+        if (jobFiles == null) {
+            return jobIds;
+        }
+        for (File jobFile : jobFiles) {
+            jobIds.add(jobFile.getName().substring(0, jobFile.getName().length() - JOB_EXTENSION.length()));
+        }
+        return jobIds;
+    }
+
+    /**
+     * Get the photos of journaled routes that have not been encoded yet, which must be kept until
+     * they are.
+     * @return The Uris of the edited photos
+     */
+    @WorkerThread
+    public List<String> getPendingPhotoUris() {
+        List<String> photoUris = new ArrayList<>();
+        for (String jobId : getJobIds()) {
+            RouteUploadJob job = load(jobId);
+            if (job != null && job.getPhotoUri() != null) {
+                photoUris.add(job.getPhotoUri());
+            }
+        }
+        return photoUris;
+    }
+
+    /**
+     * Get the staged uploads of every journaled route, which must be kept until the route is saved.
+     * @return The upload IDs
+     */
+    @WorkerThread
+    public Set<String> getUploadIds() {
+        Set<String> uploadIds = new HashSet<>();
+        for (String jobId : getJobIds()) {
+            RouteUploadJob job = load(jobId);
+            if (job != null) {
+                uploadIds.addAll(job.getUploadIds());
+            }
+        }
+        return uploadIds;
+    }
+
+    /**
+     * Remove a route from the journal once it has been saved.
+     * @param jobId The ID of the job
+     */
+    @WorkerThread
+    public void remove(String jobId) {
+        getJobFile(jobId).delete();
+    }
+
+    /**
+     * Get the journal file of a job.
+     * @param jobId The ID of the job
+     * @return The file the job is journaled to
+     */
+    private File getJobFile(String jobId) {
+        return new File(mJournalDir, jobId + JOB_EXTENSION);
+    }
+}
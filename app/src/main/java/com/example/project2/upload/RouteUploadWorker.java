@@ -0,0 +1,220 @@
+package com.example.project2.upload;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.project2.image.PhotoDecoder;
+import com.example.project2.image.PhotoRenditions;
+import com.example.project2.model.Route;
+import com.example.project2.util.FirebaseUtil;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.storage.UploadTask;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker that replays one journaled route from the {@link RouteUploadQueue}: it encodes and stages
+ * the route photo's renditions if that has not happened yet, finishes their resumable uploads,
+ * then saves the route to each of its collections. Jobs run one
+ * after another in the order they were queued, only while the device is online, and are retried
+ * with exponential backoff when they fail. A job that can never succeed is dropped from the
+ * journal and reported as a success, so the jobs chained after it still run.
+ *
+ * Each job's work is tagged with its ID. When the app starts, {@link #enqueueOrphanedJobs(Context)}
+ * queues again any journaled job that has no live work, for example because its work was
+ * cancelled or failed with an earlier version of the app.
+ */
+public class RouteUploadWorker extends Worker {
+
+    private static final String TAG = "RouteUploadWorker";
+
+    /**
+     * Input key for the ID of the journaled job
+     */
+    public static final String KEY_JOB_ID = "job_id";
+
+    /**
+     * Name of the chain every route upload is appended to, so routes are saved in order
+     */
+    private static final String UNIQUE_WORK_NAME = "route_uploads";
+    private static final String JOB_TAG_PREFIX = "route_job:";
+    private static final long BACKOFF_SECONDS = 30;
+
+    /**
+     * Constructor for RouteUploadWorker, called by WorkManager
+     * @param context Application context
+     * @param params Parameters of the work, including the job ID
+     */
+    public RouteUploadWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedule a journaled route to be uploaded after every route queued before it.
+     * @param context Any context
+     * @param jobId The ID of the journaled job
+     */
+    static void enqueue(Context context, String jobId) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(RouteUploadWorker.class)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_SECONDS, TimeUnit.SECONDS)
+                .setInputData(new Data.Builder().putString(KEY_JOB_ID, jobId).build())
+                .addTag(JOB_TAG_PREFIX + jobId)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(UNIQUE_WORK_NAME, ExistingWorkPolicy.APPEND_OR_REPLACE, request);
+    }
+
+    /**
+     * Schedule every journaled route whose work is no longer enqueued or running, after the routes
+     * that still are. Waits for WorkManager's database, so it must be called off the main thread.
+     * @param context Any context
+     */
+    @WorkerThread
+    public static void enqueueOrphanedJobs(Context context) {
+        Set<String> liveTags = new HashSet<>();
+        try {
+            for (WorkInfo info : WorkManager.getInstance(context).getWorkInfosForUniqueWork(UNIQUE_WORK_NAME).get()) {
+                if (!info.getState().isFinished()) {
+                    liveTags.addAll(info.getTags());
+                }
+            }
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Could not read the scheduled route uploads", e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        for (String jobId : RouteUploadQueue.getInstance(context).getJobIds()) {
+            if (!liveTags.contains(JOB_TAG_PREFIX + jobId)) {
+                Log.d(TAG, "Scheduling orphaned route upload " + jobId);
+                enqueue(context, jobId);
+            }
+        }
+    }
+
+    /**
+     * Uploads the route's photo and saves the route. Runs on a WorkManager background thread.
+     * @return success once the route is saved or dropped, or retry if it should be tried again later
+     */
+    @NonNull
+    @Override
+    public Result doWork() {
+        String jobId = getInputData().getString(KEY_JOB_ID);
+        RouteUploadQueue queue = RouteUploadQueue.getInstance(getApplicationContext());
+        ResumableUploadManager uploadManager = ResumableUploadManager.getInstance(getApplicationContext());
+
+        // Jobs in the chain run one at a time, so no other job is staging uploads right now
+        uploadManager.discardUnreferenced(queue.getUploadIds());
+
+        RouteUploadJob job = jobId != null ? queue.load(jobId) : null;
+        if (job == null) {
+            // Already saved by an earlier run, nothing left to do
+            return Result.success();
+        }
+
+        if (job.getPhotoUri() != null) {
+            try {
+                if (!stagePhoto(queue, uploadManager, job)) {
+                    // The photo is gone, so the route can never be saved with it. Drop it and succeed,
+                    // since a failure would also fail every route chained after it.
+                    queue.remove(job.getId());
+                    return Result.success();
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to stage the photo of route " + job.getRoute().getTitle() + ", will retry", e);
+                return Result.retry();
+            }
+        }
+
+        try {
+            // Finish the photo uploads first so the route never points at a missing photo
+            List<String> uploadIds = job.getUploadIds();
+            for (String uploadId : uploadIds) {
+                // Photos are stored by content hash, so one that is already stored does not need uploading again
+                if (!uploadManager.discardIfStored(uploadId)) {
+                    UploadTask uploadTask = uploadManager.start(uploadId);
+                    if (uploadTask != null) {
+                        Tasks.await(uploadTask);
+                    }
+                }
+            }
+
+            // The job ID is the document ID, so a replay overwrites instead of duplicating the route
+            FirebaseFirestore firestore = FirebaseUtil.getFirestore();
+            for (String collection : job.getCollections()) {
+                Tasks.await(firestore.collection(collection).document(job.getId()).set(job.getRoute()));
+                Log.d(TAG, "Route added to " + collection + " with ID: " + job.getId());
+            }
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Failed to upload route " + job.getRoute().getTitle() + ", will retry", e);
+            return Result.retry();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.retry();
+        }
+
+        queue.remove(job.getId());
+        return Result.success();
+    }
+
+    /**
+     * Decode the edited photo no larger than the full size rendition, encode its renditions and
+     * placeholder, and stage them for upload. Decoding at the camera's resolution could run the
+     * worker out of memory. The journaled job is updated so a retry does not encode the photo again.
+     * @return false if the photo could not be read
+     * @throws IOException If the renditions could not be staged or the job could not be updated
+     */
+    @WorkerThread
+    private boolean stagePhoto(RouteUploadQueue queue, ResumableUploadManager uploadManager, RouteUploadJob job)
+            throws IOException {
+        Bitmap photo = PhotoDecoder.decodeToFit(getApplicationContext(), Uri.parse(job.getPhotoUri()),
+                PhotoRenditions.FULL_MAX_EDGE, PhotoRenditions.FULL_MAX_EDGE);
+        if (photo == null) {
+            Log.e(TAG, "Could not read the photo of route " + job.getRoute().getTitle());
+            return false;
+        }
+        Route route = job.getRoute();
+        List<PhotoRenditions.Encoded> renditions = PhotoRenditions.encodeAll(photo);
+        route.setPlaceholder(PhotoRenditions.createPlaceholder(photo));
+        photo.recycle();
+
+        List<String> uploadIds = new ArrayList<>();
+        for (PhotoRenditions.Encoded encoded : renditions) {
+            uploadIds.add(uploadManager.stage(encoded.getRendition().getPath(), encoded.getBytes(),
+                    encoded.getContentType(), PhotoRenditions.CACHE_CONTROL));
+        }
+        PhotoRenditions.applyTo(route, renditions);
+        route.setPhoto("");
+        job.setUploadIds(uploadIds);
+        queue.save(job);
+        return true;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.project2.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Utility class holding the executors shared by the app, so work such as file I/O and image
+ * processing stays off the main thread and results can be handed back to it.
+ */
+public class AppExecutors {
+
+    /**
+     * Number of threads for background work, leaving a core for the main thread
+     */
+    private static final int BACKGROUND_THREADS =
+            Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+
+    private static ExecutorService BACKGROUND;
+    private static ExecutorService SERIAL;
+    private static ExecutorService DISK_IO;
+    private static Executor MAIN_THREAD;
+
+    /**
+     * Get the executor for background work such as file I/O and decoding
+     * @return An executor backed by a small pool of background threads
+     */
+    public static synchronized ExecutorService getBackgroundExecutor() {
+        if (BACKGROUND == null) {
+            BACKGROUND = Executors.newFixedThreadPool(BACKGROUND_THREADS);
+        }
+
+        return BACKGROUND;
+    }
+
+    /**
+     * Get the executor for background work that has to finish in the order it was submitted,
+     * such as mapping a stream of query results
+     * @return An executor backed by a single background thread
+     */
+    public static synchronized ExecutorService getSerialExecutor() {
+        if (SERIAL == null) {
+            SERIAL = Executors.newSingleThreadExecutor();
+        }
+
+        return SERIAL;
+    }
+
+    /**
+     * Get the executor for app storage work that has to finish in the order it was submitted,
+     * such as saving the edit session and trimming the cache. Kept apart from the serial executor
+     * so slow disk work never delays mapping query results.
+     * @return An executor backed by a single background thread
+     */
+    public static synchronized ExecutorService getDiskIoExecutor() {
+        if (DISK_IO == null) {
+            DISK_IO = Executors.newSingleThreadExecutor();
+        }
+
+        return DISK_IO;
+    }
+
+    /**
+     * Get the executor that runs work on the main thread
+     * @return An executor that posts to the main thread's Looper
+     */
+    public static synchronized Executor getMainThreadExecutor() {
+        if (MAIN_THREAD == null) {
+            Handler handler = new Handler(Looper.getMainLooper());
+            MAIN_THREAD = handler::post;
+        }
+
+        return MAIN_THREAD;
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.example.project2.util;
+
+import android.content.ComponentCallbacks2;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.example.project2.image.EditSession;
+import com.example.project2.upload.RouteUploadQueue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the photos the app writes to its cache directory, such as camera captures, within a byte
+ * budget. When the budget is exceeded the least recently used files are deleted first. Most
+ * devices do not record access times, so a file's last modified time is used as its last access,
+ * and {@link #markUsed(Uri)} moves it forward whenever a photo is opened, for example by
+ * PhotoDecoder.
+ *
+ * A photo that is still needed is never deleted, however long ago it was used: the photo of the
+ * edit saved by {@link EditSession}, and the photos of routes in the {@link RouteUploadQueue} that
+ * have not been encoded yet. Trimming runs on the disk I/O executor, in order with the reads and
+ * writes of the saved edit.
+ *
+ * Glide's disk cache is sized and evicted by Glide itself and is not managed here.
+ */
+public class CacheDirectoryManager {
+
+    private static final String TAG = "CacheDirectoryManager";
+
+    /**
+     * Folder in the cache directory that camera captures are written to
+     */
+    public static final String CAMERA_DIR = "camera";
+
+    /**
+     * Folder that edited photos were written to by earlier versions of the app, now only emptied
+     */
+    private static final String LEGACY_IMAGES_DIR = "images";
+
+    /**
+     * Byte budget of the managed folders, and the smaller budget used when the system is low on memory
+     */
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+    private static final long LOW_MEMORY_MAX_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Files used more recently than this are never deleted, so a photo that is still being edited stays
+     */
+    private static final long MIN_AGE_MS = 10 * 60 * 1000;
+
+    private static CacheDirectoryManager INSTANCE;
+
+    private final Context mContext;
+    private final File mCacheDir;
+    private final String mFileProviderAuthority;
+
+    private CacheDirectoryManager(Context context) {
+        mContext = context;
+        mCacheDir = context.getCacheDir();
+        mFileProviderAuthority = context.getPackageName() + ".fileprovider";
+    }
+
+    /**
+     * Get the cache directory manager
+     * @param context Any context, only the application context is kept
+     * @return The process-wide cache directory manager
+     */
+    public static synchronized CacheDirectoryManager getInstance(Context context) {
+        if (INSTANCE == null) {
+            INSTANCE = new CacheDirectoryManager(context.getApplicationContext());
+        }
+
+        return INSTANCE;
+    }
+
+    /**
+     * Create a new, empty file in a managed folder of the cache directory.
+     * @param directory The folder, such as {@link #CAMERA_DIR}
+     * @param prefix The start of the file name
+     * @param suffix The file extension
+     * @return The new file
+     * @throws IOException If the file could not be created
+     */
+    public File newFile(String directory, String prefix, String suffix) throws IOException {
+        File dir = new File(mCacheDir, directory);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create cache folder " + directory);
+        }
+        return File.createTempFile(prefix, suffix, dir);
+    }
+
+    /**
+     * Record that a photo was just used, so it is the last to be trimmed. Does nothing for photos
+     * outside the managed folders.
+     * @param uri The Uri of the photo, as shared through the FileProvider or as a file Uri
+     */
+    @WorkerThread
+    public void markUsed(Uri uri) {
+        File file = getFile(uri);
+        if (file != null && file.exists()) {
+            file.setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Trim the managed folders to the byte budget in the background.
+     */
+    public void trimAsync() {
+        AppExecutors.getDiskIoExecutor().execute(() -> trim(MAX_BYTES));
+    }
+
+    /**
+     * Trim the managed folders harder when the system asks the app to release memory. Called
+     * from Application.onTrimMemory().
+     * @param level The trim level passed to onTrimMemory()
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            AppExecutors.getDiskIoExecutor().execute(() -> trim(LOW_MEMORY_MAX_BYTES));
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            trimAsync();
+        }
+    }
+
+    /**
+     * Delete the least recently used files until the managed folders fit in maxBytes.
+     * @param maxBytes The byte budget to trim to
+     */
+    @WorkerThread
+    private synchronized void trim(long maxBytes) {
+        deleteContents(new File(mCacheDir, LEGACY_IMAGES_DIR));
+
+        List<File> files = new ArrayList<>();
+        File[] cameraFiles = new File(mCacheDir, CAMERA_DIR).listFiles();
+        if (cameraFiles != null) {
+            files.addAll(Arrays.asList(cameraFiles));
+        }
+
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+
+        // Least recently used first, skipping photos that are still needed
+        Set<File> inUse = getFilesInUse();
+        Collections.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (totalBytes <= maxBytes || now - file.lastModified() < MIN_AGE_MS) {
+                break;
+            }
+            if (inUse.contains(file)) {
+                continue;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                totalBytes -= length;
+            }
+        }
+        Log.d(TAG, "Trimmed cache to " + totalBytes + " bytes");
+    }
+
+    /**
+     * Get the managed files that are still needed by a saved edit or a route waiting to be uploaded.
+     */
+    @WorkerThread
+    private Set<File> getFilesInUse() {
+        List<String> uris = new ArrayList<>(RouteUploadQueue.getInstance(mContext).getPendingPhotoUris());
+        EditSession session = EditSession.restore(mContext);
+        if (session != null) {
+            uris.add(session.getPhotoUri().toString());
+        }
+
+        Set<File> inUse = new HashSet<>();
+        for (String uri : uris) {
+            File file = getFile(Uri.parse(uri));
+            if (file != null) {
+                inUse.add(file);
+            }
+        }
+        return inUse;
+    }
+
+    /**
+     * Get the file behind a Uri, if it is in a managed folder.
+     * @param uri A FileProvider content Uri or a file Uri
+     * @return The file, or null if the Uri does not point into a managed folder
+     */
+    @Nullable
+    private File getFile(Uri uri) {
+        File file = null;
+        List<String> segments = uri.getPathSegments();
+        if (ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())
+                && mFileProviderAuthority.equals(uri.getAuthority())
+                && segments.size() == 2 && CAMERA_DIR.equals(segments.get(0))) {
+            // Matches the camera cache-path in res/xml/file_paths.xml
+            file = new File(new File(mCacheDir, CAMERA_DIR), segments.get(1));
+        } else if (ContentResolver.SCHEME_FILE.equals(uri.getScheme()) && uri.getPath() != null) {
+            file = new File(uri.getPath());
+        }
+
+        if (file == null || !new File(mCacheDir, CAMERA_DIR).equals(file.getParentFile())) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Delete every file in a folder.
+     */
+    private static void deleteContents(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
@@ -18,6 +18,8 @@ package com.example.project2.util;
 import com.firebase.ui.auth.AuthUI;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageReference;
 
 /**
  * Utility class for initializing Firebase services and connecting them to the Firebase Emulator
@@ -28,12 +30,16 @@ public class FirebaseUtil {
     /** Use emulators only in debug builds **/
     private static final boolean sUseEmulators = false;
 
+    /** Cloud Storage bucket that holds the route photos **/
+    private static final String STORAGE_BUCKET = "gs://project-2-1d31a.firebasestorage.app";
+
     /**
      * Initialize Firebase services and connect them to the Firebase Emulator Suite.
      */
     private static FirebaseFirestore FIRESTORE;
     private static FirebaseAuth AUTH;
     private static AuthUI AUTH_UI;
+    private static FirebaseStorage STORAGE;
 
     /**
      * Get the Firestore instance
@@ -89,4 +95,30 @@ public class FirebaseUtil {
         return AUTH_UI;
     }
 
+    /**
+     * Get the Firebase Storage instance for the route photo bucket.
+     * @return A Firebase Storage instance needed to upload and download route photos
+     */
+    public static FirebaseStorage getStorage() {
+        if (STORAGE == null) {
+            STORAGE = FirebaseStorage.getInstance(STORAGE_BUCKET);
+
+            // Connect to the Cloud Storage emulator when appropriate. The host '10.0.2.2' is a
+            // special IP address to let the Android emulator connect to 'localhost'.
+            if (sUseEmulators) {
+                STORAGE.useEmulator("10.0.2.2", 9199);
+            }
+        }
+
+        return STORAGE;
+    }
+
+    /**
+     * Get a reference to the root of the route photo bucket.
+     * @return The root StorageReference of the bucket
+     */
+    public static StorageReference getStorageRoot() {
+        return getStorage().getReference();
+    }
+
 }